@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.benchmarks;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.joda.time.DateTime;
+import org.obiba.agate.domain.Application;
+import org.obiba.agate.domain.AttributeConfiguration;
+import org.obiba.agate.domain.Configuration;
+import org.obiba.agate.domain.Group;
+import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.domain.User;
+import org.obiba.agate.repository.AgateConfigRepository;
+import org.obiba.agate.repository.ApplicationRepository;
+import org.obiba.agate.repository.GroupRepository;
+import org.obiba.agate.repository.TicketRepository;
+import org.obiba.agate.repository.UserRepository;
+import org.obiba.agate.service.ApplicationService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.google.common.collect.Lists;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Agate services backed by in-memory repositories, populated with one active user belonging to a few groups, one
+ * application and one ticket.
+ */
+@State(Scope.Benchmark)
+public class AgateState {
+
+  static final String USERNAME = "jdoe";
+
+  static final String APPLICATION = "mica";
+
+  static final String APPLICATION_KEY = "changeit";
+
+  static final String TICKET_ID = "0123456789abcdef01234567";
+
+  private static final int GROUP_COUNT = 20;
+
+  private static final String SECRET_KEY = "7f26f9a1e6cd4a3b8ea3a5e1bb5cf0c4d3a8e7b1c2f4a6d8e0b9c7a5f3e1d2c4";
+
+  AnnotationConfigApplicationContext context;
+
+  User user;
+
+  Ticket ticket;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    context = new AnnotationConfigApplicationContext(BenchmarkConfiguration.class);
+
+    Configuration configuration = new Configuration();
+    configuration.setId("benchmarks");
+    configuration.setSecretKey(SECRET_KEY);
+    configuration.addUserAttribute(new AttributeConfiguration("institution", AttributeConfiguration.Type.STRING, true,
+      null));
+    configuration.addUserAttribute(new AttributeConfiguration("country", AttributeConfiguration.Type.STRING, false,
+      Lists.newArrayList("CA", "FR", "IT", "US")));
+    AgateConfigRepository agateConfigRepository = context.getBean(AgateConfigRepository.class);
+    when(agateConfigRepository.count()).thenReturn(1L);
+    when(agateConfigRepository.findAll()).thenReturn(Lists.newArrayList(configuration));
+
+    Group[] groups = IntStream.range(0, GROUP_COUNT).mapToObj(i -> {
+      Group group = new Group("group" + i);
+      group.setNameAsId();
+      group.addApplication(APPLICATION);
+      return group;
+    }).toArray(Group[]::new);
+    when(context.getBean(GroupRepository.class).findAll()).thenReturn(Lists.newArrayList(groups));
+
+    user = User.newBuilder().name(USERNAME).email("jdoe@example.org").firstName("John").lastName("Doe").active()
+      .groups(IntStream.range(0, GROUP_COUNT).mapToObj(i -> "group" + i).collect(Collectors.toList()))
+      .attribute("institution", "OBiBa").build();
+    user.setId(USERNAME);
+    user.setCreatedDate(DateTime.now());
+    UserRepository userRepository = context.getBean(UserRepository.class);
+    when(userRepository.findByName(USERNAME)).thenReturn(Lists.newArrayList(user));
+    when(userRepository.findOne(USERNAME)).thenReturn(user);
+
+    Application application = new Application(APPLICATION,
+      context.getBean(ApplicationService.class).hashKey(APPLICATION_KEY));
+    application.setNameAsId();
+    ApplicationRepository applicationRepository = context.getBean(ApplicationRepository.class);
+    when(applicationRepository.findByNameAndKey(eq(APPLICATION), anyString()))
+      .thenAnswer(invocation -> application.getKey().equals(invocation.getArguments()[1])
+        ? Lists.newArrayList(application)
+        : Lists.newArrayList());
+
+    ticket = new Ticket();
+    ticket.setId(TICKET_ID);
+    ticket.setUsername(USERNAME);
+    ticket.setCreatedDate(DateTime.now());
+    when(context.getBean(TicketRepository.class).findOne(TICKET_ID)).thenReturn(ticket);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  <T> T getBean(Class<T> type) {
+    return context.getBean(type);
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.benchmarks;
+
+import java.util.concurrent.Executor;
+
+import org.obiba.agate.config.AsyncConfiguration;
+import org.obiba.agate.repository.AgateConfigRepository;
+import org.obiba.agate.repository.ApplicationRepository;
+import org.obiba.agate.repository.AuthorizationRepository;
+import org.obiba.agate.repository.DocumentCursors;
+import org.obiba.agate.repository.GroupRepository;
+import org.obiba.agate.repository.TicketEventRepository;
+import org.obiba.agate.repository.TicketRepository;
+import org.obiba.agate.repository.UserCredentialsRepository;
+import org.obiba.agate.repository.UserRepository;
+import org.obiba.agate.service.ApplicationService;
+import org.obiba.agate.service.AuthorizationService;
+import org.obiba.agate.service.ConfigurationService;
+import org.obiba.agate.service.GroupApplicationsIndex;
+import org.obiba.agate.service.LastLoginTracker;
+import org.obiba.agate.service.MailService;
+import org.obiba.agate.service.TicketEventRecorder;
+import org.obiba.agate.service.TicketService;
+import org.obiba.agate.service.TokenCache;
+import org.obiba.agate.service.TokenUtils;
+import org.obiba.agate.service.UserService;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.ehcache.EhCacheCacheManager;
+import org.springframework.cache.ehcache.EhCacheManagerFactoryBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.thymeleaf.spring4.SpringTemplateEngine;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Application context of the benchmarks: the services are the real ones, with their caches, while the MongoDB
+ * repositories are faked (see {@link AgateState}) so that no database server is required.
+ */
+@Configuration
+@EnableCaching
+@PropertySource("classpath:benchmarks.properties")
+@Import({ ConfigurationService.class, UserService.class, GroupApplicationsIndex.class, LastLoginTracker.class,
+  TicketService.class, TicketEventRecorder.class, TokenCache.class, TokenUtils.class, AuthorizationService.class,
+  ApplicationService.class, DocumentCursors.class })
+@ComponentScan("org.obiba.agate.web.model")
+public class BenchmarkConfiguration {
+
+  @Bean
+  public EhCacheManagerFactoryBean cacheManagerFactory() {
+    EhCacheManagerFactoryBean factoryBean = new EhCacheManagerFactoryBean();
+    factoryBean.setCacheManagerName("agate-benchmarks");
+    return factoryBean;
+  }
+
+  @Bean
+  public CacheManager springCacheManager(net.sf.ehcache.CacheManager cacheManager) {
+    return new EhCacheCacheManager(cacheManager);
+  }
+
+  @Bean
+  public EventBus eventBus() {
+    return new EventBus();
+  }
+
+  @Bean(name = AsyncConfiguration.MAINTENANCE_EXECUTOR)
+  public Executor maintenanceExecutor() {
+    return MoreExecutors.sameThreadExecutor();
+  }
+
+  @Bean
+  public MetricRegistry metricRegistry() {
+    return new MetricRegistry();
+  }
+
+  @Bean
+  public MongoTemplate mongoTemplate() {
+    return mock(MongoTemplate.class);
+  }
+
+  @Bean
+  public AgateConfigRepository agateConfigRepository() {
+    return mock(AgateConfigRepository.class);
+  }
+
+  @Bean
+  public UserRepository userRepository() {
+    return mock(UserRepository.class);
+  }
+
+  @Bean
+  public UserCredentialsRepository userCredentialsRepository() {
+    return mock(UserCredentialsRepository.class);
+  }
+
+  @Bean
+  public GroupRepository groupRepository() {
+    return mock(GroupRepository.class);
+  }
+
+  @Bean
+  public TicketRepository ticketRepository() {
+    return mock(TicketRepository.class);
+  }
+
+  @Bean
+  public TicketEventRepository ticketEventRepository() {
+    return mock(TicketEventRepository.class);
+  }
+
+  @Bean
+  public ApplicationRepository applicationRepository() {
+    return mock(ApplicationRepository.class);
+  }
+
+  @Bean
+  public AuthorizationRepository authorizationRepository() {
+    return mock(AuthorizationRepository.class);
+  }
+
+  @Bean
+  public MailService mailService() {
+    return mock(MailService.class);
+  }
+
+  @Bean
+  public SpringTemplateEngine templateEngine() {
+    return mock(SpringTemplateEngine.class);
+  }
+
+}
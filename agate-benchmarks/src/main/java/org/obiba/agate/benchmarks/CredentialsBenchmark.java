@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.obiba.agate.service.ApplicationService;
+import org.obiba.agate.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing of the user passwords and verification of the application credentials.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CredentialsBenchmark {
+
+  private UserService userService;
+
+  private ApplicationService applicationService;
+
+  @Setup(Level.Trial)
+  public void setUp(AgateState agate) {
+    userService = agate.getBean(UserService.class);
+    applicationService = agate.getBean(ApplicationService.class);
+  }
+
+  @Benchmark
+  public String hashPassword() {
+    return userService.hashPassword("password");
+  }
+
+  @Benchmark
+  public boolean isValid() {
+    return applicationService.isValid(AgateState.APPLICATION, AgateState.APPLICATION_KEY);
+  }
+
+  @Benchmark
+  public boolean isValidWithWrongKey() {
+    return applicationService.isValid(AgateState.APPLICATION, "wrong");
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.obiba.agate.domain.User;
+import org.obiba.agate.service.ConfigurationService;
+import org.obiba.agate.web.model.Agate;
+import org.obiba.agate.web.model.Dtos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of the users and of the join form, as done by the administration and sign-up pages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtosBenchmark {
+
+  private Dtos dtos;
+
+  private ConfigurationService configurationService;
+
+  private User user;
+
+  @Setup(Level.Trial)
+  public void setUp(AgateState agate) {
+    dtos = agate.getBean(Dtos.class);
+    configurationService = agate.getBean(ConfigurationService.class);
+    user = agate.user;
+  }
+
+  @Benchmark
+  public Agate.UserDto userAsDto() {
+    return dtos.asDto(user);
+  }
+
+  @Benchmark
+  public JSONObject getJoinConfiguration() throws JSONException, IOException {
+    return configurationService.getJoinConfiguration();
+  }
+
+}
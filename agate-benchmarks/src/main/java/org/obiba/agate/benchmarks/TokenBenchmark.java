@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.service.TicketService;
+import org.obiba.agate.service.TokenCache;
+import org.obiba.agate.service.TokenUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Issuing and validation of the access tokens, as done on each login and on each request of an application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenBenchmark {
+
+  private TokenUtils tokenUtils;
+
+  private TokenCache tokenCache;
+
+  private TicketService ticketService;
+
+  private Ticket ticket;
+
+  private String token;
+
+  @Setup(Level.Trial)
+  public void setUp(AgateState agate) {
+    tokenUtils = agate.getBean(TokenUtils.class);
+    tokenCache = agate.getBean(TokenCache.class);
+    ticketService = agate.getBean(TicketService.class);
+    ticket = agate.ticket;
+    token = tokenUtils.makeAccessToken(ticket);
+  }
+
+  @Benchmark
+  public String makeAccessToken() {
+    return tokenUtils.makeAccessToken(ticket);
+  }
+
+  @Benchmark
+  public void validateAccessToken() {
+    tokenUtils.validateAccessToken(token, AgateState.APPLICATION);
+  }
+
+  @Benchmark
+  public void validateAccessTokenUncached() {
+    tokenCache.clear();
+    tokenUtils.validateAccessToken(token, AgateState.APPLICATION);
+  }
+
+  @Benchmark
+  public Ticket findByToken() {
+    return ticketService.findByToken(token);
+  }
+
+  @Benchmark
+  public TokenCache.VerifiedToken verifyToken() {
+    return ticketService.verifyToken(token);
+  }
+
+}
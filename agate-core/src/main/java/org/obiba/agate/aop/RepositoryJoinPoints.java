@@ -0,0 +1,30 @@
+package org.obiba.agate.aop;
+
+import org.aspectj.lang.JoinPoint;
+import org.springframework.data.repository.Repository;
+
+/**
+ * Helpers for the aspects applied to the Spring Data repositories.
+ */
+public final class RepositoryJoinPoints {
+
+  private static final String REPOSITORY_PACKAGE = "org.obiba.agate.repository";
+
+  private RepositoryJoinPoints() {}
+
+  /**
+   * Get the name of the agate repository interface implemented by the proxy, the method being possibly declared by a
+   * generic Spring Data interface.
+   *
+   * @param joinPoint
+   * @return
+   */
+  public static String getRepositoryName(JoinPoint joinPoint) {
+    for(Class<?> type : joinPoint.getThis().getClass().getInterfaces()) {
+      if(Repository.class.isAssignableFrom(type) && type.getName().startsWith(REPOSITORY_PACKAGE)) {
+        return type.getSimpleName();
+      }
+    }
+    return joinPoint.getSignature().getDeclaringType().getSimpleName();
+  }
+}
@@ -0,0 +1,30 @@
+package org.obiba.agate.aop.metrics;
+
+import javax.inject.Inject;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.obiba.agate.aop.RepositoryJoinPoints;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Aspect for timing the database operations, per repository and method.
+ */
+@Aspect
+public class RepositoryMetricsAspect {
+
+  @Inject
+  private MetricRegistry metricRegistry;
+
+  @Around("this(org.springframework.data.repository.Repository)")
+  public Object timeAround(ProceedingJoinPoint joinPoint) throws Throwable {
+    Timer timer = metricRegistry.timer(MetricRegistry.name("mongodb", "repositories",
+      RepositoryJoinPoints.getRepositoryName(joinPoint), joinPoint.getSignature().getName()));
+    try(Timer.Context ignored = timer.time()) {
+      return joinPoint.proceed();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package org.obiba.agate.aop.routing;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.obiba.agate.aop.RepositoryJoinPoints;
+import org.obiba.agate.domain.Application;
+import org.obiba.agate.domain.Group;
+import org.obiba.agate.domain.User;
+import org.obiba.agate.repository.RoutingMongoTemplate;
+import org.springframework.data.domain.Persistable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Aspect for reading from the secondaries with the configured repository finders (such as
+ * "UserRepository.findByNameAndStatus").
+ * <p/>
+ * <p>
+ * The documents written through the repositories are read from the primary for a while, so that they can be re-read
+ * right after being saved: a finder argument which is a lookup key (ID, and name or e-mail of the users, groups and
+ * applications) of a recently written document keeps the finder on the primary. The writes made with the
+ * MongoTemplate are not seen, so the finders of documents also written that way should not be routed.
+ * </p>
+ * <p>
+ * The recent writes are only known by this JVM: with several application instances, a document written through one
+ * instance may be read from a stale secondary by another one, read-your-writes is not guaranteed across instances.
+ * </p>
+ */
+@Aspect
+public class SecondaryReadsAspect {
+
+  private static final int MAX_RECENT_WRITES = 100000;
+
+  private final Set<String> finders;
+
+  private final Cache<String, Boolean> recentWrites;
+
+  /**
+   * @param finders repository finders, in the form "RepositoryName.method"
+   * @param primaryWindow milliseconds during which a written document is read from the primary
+   */
+  public SecondaryReadsAspect(Collection<String> finders, long primaryWindow) {
+    this.finders = ImmutableSet.copyOf(finders);
+    recentWrites = CacheBuilder.newBuilder().maximumSize(MAX_RECENT_WRITES)
+      .expireAfterWrite(primaryWindow, TimeUnit.MILLISECONDS).build();
+  }
+
+  @Around("this(org.springframework.data.repository.Repository)")
+  public Object routeAround(ProceedingJoinPoint joinPoint) throws Throwable {
+    String method = joinPoint.getSignature().getName();
+    if(RoutingMongoTemplate.isReadingFromSecondary() ||
+      !finders.contains(RepositoryJoinPoints.getRepositoryName(joinPoint) + "." + method) ||
+      isRecentlyWritten(joinPoint.getArgs())) {
+      Object result = joinPoint.proceed();
+      if(isWrite(method)) {
+        for(Object arg : joinPoint.getArgs()) recordWrite(arg);
+        recordWrite(result);
+      }
+      return result;
+    }
+
+    RoutingMongoTemplate.readFromSecondary(true);
+    try {
+      return joinPoint.proceed();
+    } finally {
+      RoutingMongoTemplate.readFromSecondary(false);
+    }
+  }
+
+  //
+  // Private methods
+  //
+
+  private boolean isWrite(String method) {
+    return method.startsWith("save") || method.startsWith("insert") || method.startsWith("update") ||
+      method.startsWith("delete");
+  }
+
+  private boolean isRecentlyWritten(Object[] args) {
+    for(Object arg : args) {
+      if(arg instanceof String && recentWrites.getIfPresent(arg) != null) return true;
+    }
+    return false;
+  }
+
+  /**
+   * The keys, other than the ID, by which the document is looked up.
+   *
+   * @param document
+   * @return
+   */
+  private List<String> getLookupKeys(Object document) {
+    if(document instanceof User) return Arrays.asList(((User) document).getName(), ((User) document).getEmail());
+    if(document instanceof Group) return Collections.singletonList(((Group) document).getName());
+    if(document instanceof Application) return Collections.singletonList(((Application) document).getName());
+    return Collections.emptyList();
+  }
+
+  private void recordWrite(Object value) {
+    if(value instanceof String) {
+      recentWrites.put((String) value, true);
+    } else if(value instanceof Persistable) {
+      Object id = ((Persistable<?>) value).getId();
+      if(id != null) recentWrites.put(id.toString(), true);
+      getLookupKeys(value).stream().filter(key -> key != null).forEach(key -> recentWrites.put(key, true));
+    } else if(value instanceof Iterable) {
+      for(Object item : (Iterable<?>) value) recordWrite(item);
+    }
+  }
+}
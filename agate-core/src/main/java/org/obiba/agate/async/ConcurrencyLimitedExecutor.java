@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.async;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Executor starting a thread per task, typically a virtual thread, of which at most a given number run at a time: the
+ * other tasks wait for their turn in their own thread, so that downstream resources (database, SMTP server...) are not
+ * flooded.
+ */
+public class ConcurrencyLimitedExecutor implements Executor {
+
+  private final ExecutorService delegate;
+
+  private final Semaphore permits;
+
+  private final int maxConcurrency;
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  public ConcurrencyLimitedExecutor(ExecutorService delegate, int maxConcurrency) {
+    this.delegate = delegate;
+    this.maxConcurrency = maxConcurrency;
+    permits = new Semaphore(maxConcurrency);
+  }
+
+  /**
+   * Create an executor starting a new virtual thread for each task.
+   *
+   * @return null if virtual threads are not supported by the running JVM (before Java 21)
+   */
+  @Nullable
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      // not referenced directly, so that the application still builds and runs on Java 8
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch(ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    delegate.execute(() -> {
+      waiting.incrementAndGet();
+      try {
+        permits.acquire();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        waiting.decrementAndGet();
+      }
+      try {
+        task.run();
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  /**
+   * Register the running and waiting tasks gauges.
+   *
+   * @param name
+   * @param metricRegistry
+   */
+  public void monitor(String name, MetricRegistry metricRegistry) {
+    metricRegistry.register(MetricRegistry.name("executors", name, "active"),
+      (Gauge<Integer>) () -> maxConcurrency - permits.availablePermits());
+    metricRegistry.register(MetricRegistry.name("executors", name, "queued"), (Gauge<Integer>) waiting::get);
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.async;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Saturation policy of a thread pool that counts the rejected tasks before applying the named policy: "abort",
+ * "caller-runs", "discard" or "discard-oldest". It also registers the pool's active threads, size and queue depth
+ * gauges, under "executors.<name>".
+ */
+public class MonitoredRejectedExecutionHandler implements RejectedExecutionHandler {
+
+  private static final Logger log = LoggerFactory.getLogger(MonitoredRejectedExecutionHandler.class);
+
+  private final String name;
+
+  private final RejectedExecutionHandler policy;
+
+  private final Counter rejections;
+
+  public MonitoredRejectedExecutionHandler(String name, String policy, MetricRegistry metricRegistry) {
+    this.name = name;
+    this.policy = newPolicy(policy);
+    rejections = metricRegistry.counter(MetricRegistry.name("executors", name, "rejected"));
+  }
+
+  /**
+   * Register the gauges of the thread pool, which may be started later.
+   *
+   * @param executor
+   * @param metricRegistry
+   */
+  public void monitor(Supplier<ThreadPoolExecutor> executor, MetricRegistry metricRegistry) {
+    metricRegistry.register(MetricRegistry.name("executors", name, "active"),
+      (Gauge<Integer>) () -> executor.get().getActiveCount());
+    metricRegistry.register(MetricRegistry.name("executors", name, "poolSize"),
+      (Gauge<Integer>) () -> executor.get().getPoolSize());
+    metricRegistry.register(MetricRegistry.name("executors", name, "queued"),
+      (Gauge<Integer>) () -> executor.get().getQueue().size());
+  }
+
+  @Override
+  public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+    rejections.inc();
+    log.warn("Executor '{}' is saturated, task rejected", name);
+    policy.rejectedExecution(task, executor);
+  }
+
+  private static RejectedExecutionHandler newPolicy(String policy) {
+    switch(policy == null ? "abort" : policy.toLowerCase()) {
+      case "caller-runs":
+        return new ThreadPoolExecutor.CallerRunsPolicy();
+      case "discard":
+        return new ThreadPoolExecutor.DiscardPolicy();
+      case "discard-oldest":
+        return new ThreadPoolExecutor.DiscardOldestPolicy();
+      case "abort":
+        return new ThreadPoolExecutor.AbortPolicy();
+      default:
+        throw new IllegalArgumentException("Unknown rejection policy: " + policy);
+    }
+  }
+
+}
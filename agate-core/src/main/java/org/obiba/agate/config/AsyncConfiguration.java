@@ -1,41 +1,76 @@
 package org.obiba.agate.config;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
+import javax.inject.Inject;
+
+import org.obiba.agate.async.ConcurrencyLimitedExecutor;
 import org.obiba.agate.async.ExceptionHandlingAsyncTaskExecutor;
+import org.obiba.agate.async.MonitoredRejectedExecutionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.bind.RelaxedPropertyResolver;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.aop.interceptor.SimpleAsyncUncaughtExceptionHandler;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
 
+import com.codahale.metrics.MetricRegistry;
 
+/**
+ * Separate thread pools for the @Async tasks, the event bus subscribers, the e-mails sending, the bulk e-mails jobs and
+ * the scheduled maintenance jobs, so that a burst of one kind of task does not delay the others. Each pool is
+ * configured under "async.", "async.events.", "async.mail.", "async.bulkMail." and "async.maintenance." respectively. See {@link #isVirtualMode()} for
+ * running the tasks on virtual threads.
+ */
 @Configuration
 @EnableAsync
 @EnableScheduling
-public class AsyncConfiguration implements AsyncConfigurer, EnvironmentAware {
+public class AsyncConfiguration implements AsyncConfigurer, SchedulingConfigurer, EnvironmentAware {
+
+  public static final String EVENTS_EXECUTOR = "eventsExecutor";
+
+  public static final String MAIL_EXECUTOR = "mailExecutor";
+
+  public static final String BULK_MAIL_EXECUTOR = "bulkMailExecutor";
+
+  public static final String MAINTENANCE_EXECUTOR = "maintenanceExecutor";
 
   private static final Logger log = LoggerFactory.getLogger(AsyncConfiguration.class);
 
-  private static final int DEFAULT_MAX_POOL_SIZE = 50;
+  private static final int DEFAULT_MAX_POOL_SIZE = 16;
+
+  private static final int DEFAULT_QUEUE_CAPACITY = 100;
 
-  private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+  private static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
 
   private static final int DEFAULT_POOL_SIZE = 2;
 
-  private RelaxedPropertyResolver propertyResolver;
+  private static final String DEFAULT_REJECTION_POLICY = "abort";
+
+  private static final int DEFAULT_MAX_CONCURRENCY = 50;
+
+  @Inject
+  private MetricRegistry metricRegistry;
+
+  private Environment environment;
 
   @Override
   public void setEnvironment(Environment environment) {
-    propertyResolver = new RelaxedPropertyResolver(environment, "async.");
+    this.environment = environment;
   }
 
   @Override
@@ -44,14 +79,89 @@ public class AsyncConfiguration implements AsyncConfigurer, EnvironmentAware {
   }
 
   @Bean
+  @Primary
   @Override
   public Executor getAsyncExecutor() {
     log.debug("Creating Async Task Executor");
+    return new ExceptionHandlingAsyncTaskExecutor(newExecutor("async", "async.", "agate-executor-"));
+  }
+
+  @Bean(name = EVENTS_EXECUTOR)
+  public Executor eventsExecutor() {
+    log.debug("Creating Events Executor");
+    return new ExceptionHandlingAsyncTaskExecutor(newExecutor("events", "async.events.", "agate-events-"));
+  }
+
+  @Bean(name = MAIL_EXECUTOR)
+  public Executor mailExecutor() {
+    log.debug("Creating Mail Executor");
+    return new ExceptionHandlingAsyncTaskExecutor(newExecutor("mail", "async.mail.", "agate-mailer-"));
+  }
+
+  @Bean(name = BULK_MAIL_EXECUTOR)
+  public Executor bulkMailExecutor() {
+    log.debug("Creating Bulk Mail Executor");
+    return new ExceptionHandlingAsyncTaskExecutor(newExecutor("bulkMail", "async.bulkMail.", "agate-bulk-mailer-"));
+  }
+
+  @Bean(name = MAINTENANCE_EXECUTOR)
+  public ThreadPoolTaskScheduler maintenanceExecutor() {
+    log.debug("Creating Maintenance Scheduler");
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(environment, "async.maintenance.");
+    MonitoredRejectedExecutionHandler handler = new MonitoredRejectedExecutionHandler("maintenance",
+      propertyResolver.getProperty("rejectionPolicy", DEFAULT_REJECTION_POLICY), metricRegistry);
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(propertyResolver.getProperty("poolSize", Integer.class, DEFAULT_POOL_SIZE));
+    scheduler.setRejectedExecutionHandler(handler);
+    scheduler.setThreadNamePrefix("agate-maintenance-");
+    handler.monitor(scheduler::getScheduledThreadPoolExecutor, metricRegistry);
+    return scheduler;
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+    taskRegistrar.setScheduler(maintenanceExecutor());
+  }
+
+  private AsyncTaskExecutor newExecutor(String name, String prefix, String threadNamePrefix) {
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(environment, prefix);
+    if(isVirtualMode()) {
+      ExecutorService virtualThreads = ConcurrencyLimitedExecutor.newVirtualThreadPerTaskExecutor();
+      if(virtualThreads != null) {
+        ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(virtualThreads,
+          propertyResolver.getProperty("maxConcurrency", Integer.class, DEFAULT_MAX_CONCURRENCY));
+        executor.monitor(name, metricRegistry);
+        return new ConcurrentTaskExecutor(executor);
+      }
+      log.warn("Virtual threads are not supported by this JVM, using a thread pool for the {} tasks", name);
+    }
+
+    // a pool only grows beyond its core size once its queue is full: by default the core size is the maximum size
+    // and the idle threads time out, so that the pool grows before queuing and shrinks when idle
+    MonitoredRejectedExecutionHandler handler = new MonitoredRejectedExecutionHandler(name,
+      propertyResolver.getProperty("rejectionPolicy", DEFAULT_REJECTION_POLICY), metricRegistry);
+    int maxPoolSize = propertyResolver.getProperty("maxPoolSize", Integer.class, DEFAULT_MAX_POOL_SIZE);
     ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-    executor.setCorePoolSize(propertyResolver.getProperty("corePoolSize", Integer.class, DEFAULT_POOL_SIZE));
-    executor.setMaxPoolSize(propertyResolver.getProperty("maxPoolSize", Integer.class, DEFAULT_MAX_POOL_SIZE));
+    executor.setCorePoolSize(Math.min(maxPoolSize, propertyResolver.getProperty("corePoolSize", Integer.class,
+      maxPoolSize)));
+    executor.setMaxPoolSize(maxPoolSize);
     executor.setQueueCapacity(propertyResolver.getProperty("queueCapacity", Integer.class, DEFAULT_QUEUE_CAPACITY));
-    executor.setThreadNamePrefix("agate-executor-");
-    return new ExceptionHandlingAsyncTaskExecutor(executor);
+    executor.setKeepAliveSeconds(propertyResolver.getProperty("keepAliveSeconds", Integer.class,
+      DEFAULT_KEEP_ALIVE_SECONDS));
+    executor.setAllowCoreThreadTimeOut(true);
+    executor.setRejectedExecutionHandler(handler);
+    executor.setThreadNamePrefix(threadNamePrefix);
+    handler.monitor(executor::getThreadPoolExecutor, metricRegistry);
+    return executor;
+  }
+
+  /**
+   * In virtual mode, the @Async, event bus, e-mails and bulk e-mails tasks run on virtual threads (Java 21+), each executor running
+   * at most "maxConcurrency" tasks at a time instead of sizing a thread pool.
+   *
+   * @return
+   */
+  private boolean isVirtualMode() {
+    return "virtual".equalsIgnoreCase(environment.getProperty("async.mode", "platform"));
   }
 }
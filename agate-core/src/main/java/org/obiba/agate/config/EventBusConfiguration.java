@@ -4,6 +4,7 @@ import java.lang.reflect.Method;
 import java.util.concurrent.Executor;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +23,7 @@ public class EventBusConfiguration {
 
   // defined in AsyncConfiguration
   @Inject
+  @Named(AsyncConfiguration.EVENTS_EXECUTOR)
   private Executor executor;
 
   @Bean
@@ -1,28 +1,47 @@
 package org.obiba.agate.config;
 
+import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import org.obiba.agate.aop.metrics.RepositoryMetricsAspect;
+import org.obiba.agate.aop.routing.SecondaryReadsAspect;
+import org.obiba.agate.config.metrics.MongoConnectionPoolGaugeSet;
+import org.obiba.agate.domain.TicketEvent;
+import org.obiba.agate.repository.RoutingMongoTemplate;
 import org.obiba.runtime.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.bind.RelaxedPropertyResolver;
 import org.springframework.context.ApplicationContextException;
 import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.data.authentication.UserCredentials;
 import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.convert.CustomConversions;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.mongodb.DBObject;
 import com.mongodb.Mongo;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 
@@ -32,14 +51,38 @@ public class MongoDbConfiguration extends AbstractMongoConfiguration implements
 
   private static final Logger log = LoggerFactory.getLogger(MongoDbConfiguration.class);
 
+  private static final int DEFAULT_CONNECTIONS_PER_HOST = 100;
+
+  private static final int DEFAULT_THREADS_ALLOWED_TO_BLOCK_FOR_CONNECTION_MULTIPLIER = 5;
+
+  private static final int DEFAULT_MAX_WAIT_TIME = 120000;
+
+  private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+  private static final int DEFAULT_SOCKET_TIMEOUT = 0;
+
+  private static final String DEFAULT_READ_PREFERENCE = "primary";
+
+  private static final String DEFAULT_WRITE_CONCERN = "ACKNOWLEDGED";
+
+  private static final String DEFAULT_SECONDARY_READ_PREFERENCE = "secondaryPreferred";
+
+  private static final long DEFAULT_PRIMARY_WINDOW = 10000;
+
   private RelaxedPropertyResolver propertyResolver;
 
+  private RelaxedPropertyResolver secondaryReadsPropertyResolver;
+
   @Inject
   private Environment env;
 
+  @Inject
+  private MetricRegistry metricRegistry;
+
   @Override
   public void setEnvironment(Environment environment) {
     propertyResolver = new RelaxedPropertyResolver(environment, "mongodb.");
+    secondaryReadsPropertyResolver = new RelaxedPropertyResolver(environment, "mongodb.secondaryReads.");
   }
 
   @Override
@@ -56,7 +99,53 @@ public class MongoDbConfiguration extends AbstractMongoConfiguration implements
           "Please check your Spring profile, current profiles are: {}", Arrays.toString(env.getActiveProfiles()));
       throw new ApplicationContextException("MongoDB is not configured correctly");
     }
-    return new MongoClient(propertyResolver.getProperty("url"));
+    List<ServerAddress> addresses = serverAddresses();
+    if(addresses.size() == 1 && isSecondaryReadsEnabled()) {
+      log.warn("MongoDB secondary reads are enabled but a single server is configured: as there is no replica set " +
+        "discovery, all the reads go to this server. Please list the replica set members in mongodb.url");
+    }
+    // a single address is a direct connection, a seed list discovers the replica set members
+    MongoClient mongoClient = addresses.size() == 1
+      ? new MongoClient(addresses.get(0), mongoClientOptions())
+      : new MongoClient(addresses, mongoClientOptions());
+    metricRegistry.register(MetricRegistry.name("mongodb", "pool"), new MongoConnectionPoolGaugeSet());
+    return mongoClient;
+  }
+
+  /**
+   * The audit trail (ticket events) can be written with its own write concern, usually a weaker one. When the
+   * secondary reads are enabled, the template reads the configured finders with the secondary read preference.
+   *
+   * @return
+   * @throws Exception
+   */
+  @Override
+  @Bean
+  public MongoTemplate mongoTemplate() throws Exception {
+    MongoTemplate mongoTemplate = isSecondaryReadsEnabled()
+      ? new RoutingMongoTemplate(mongoDbFactory(), mappingMongoConverter(), ReadPreference
+      .valueOf(secondaryReadsPropertyResolver.getProperty("readPreference", DEFAULT_SECONDARY_READ_PREFERENCE)))
+      : super.mongoTemplate();
+    String auditWriteConcern = propertyResolver.getProperty("auditWriteConcern");
+    if(!isNullOrEmpty(auditWriteConcern)) {
+      WriteConcern auditConcern = WriteConcern.valueOf(auditWriteConcern);
+      mongoTemplate.setWriteConcernResolver(
+        action -> TicketEvent.class.equals(action.getEntityClass()) ? auditConcern : action.getDefaultWriteConcern());
+    }
+    return mongoTemplate;
+  }
+
+  @Bean
+  public RepositoryMetricsAspect repositoryMetricsAspect() {
+    return new RepositoryMetricsAspect();
+  }
+
+  @Bean
+  @Conditional(SecondaryReadsCondition.class)
+  public SecondaryReadsAspect secondaryReadsAspect() {
+    return new SecondaryReadsAspect(Splitter.on(',').omitEmptyStrings().trimResults()
+      .splitToList(secondaryReadsPropertyResolver.getProperty("finders", "")),
+      secondaryReadsPropertyResolver.getProperty("primaryWindow", Long.class, DEFAULT_PRIMARY_WINDOW));
   }
 
   @Override
@@ -73,6 +162,48 @@ public class MongoDbConfiguration extends AbstractMongoConfiguration implements
     return isNullOrEmpty(username) || isNullOrEmpty(password) ? null : new UserCredentials(username, password);
   }
 
+  private boolean isSecondaryReadsEnabled() {
+    return secondaryReadsPropertyResolver.getProperty("enabled", Boolean.class, false);
+  }
+
+  /**
+   * The comma separated addresses of the "url" property.
+   *
+   * @return
+   * @throws UnknownHostException
+   */
+  private List<ServerAddress> serverAddresses() throws UnknownHostException {
+    List<ServerAddress> addresses = Lists.newArrayList();
+    for(String address : Splitter.on(',').omitEmptyStrings().trimResults().split(propertyResolver.getProperty("url"))) {
+      addresses.add(new ServerAddress(address));
+    }
+    return addresses;
+  }
+
+  private MongoClientOptions mongoClientOptions() {
+    return MongoClientOptions.builder() //
+      .connectionsPerHost(
+        propertyResolver.getProperty("connectionsPerHost", Integer.class, DEFAULT_CONNECTIONS_PER_HOST)) //
+      .threadsAllowedToBlockForConnectionMultiplier(propertyResolver
+        .getProperty("threadsAllowedToBlockForConnectionMultiplier", Integer.class,
+          DEFAULT_THREADS_ALLOWED_TO_BLOCK_FOR_CONNECTION_MULTIPLIER)) //
+      .maxWaitTime(propertyResolver.getProperty("maxWaitTime", Integer.class, DEFAULT_MAX_WAIT_TIME)) //
+      .connectTimeout(propertyResolver.getProperty("connectTimeout", Integer.class, DEFAULT_CONNECT_TIMEOUT)) //
+      .socketTimeout(propertyResolver.getProperty("socketTimeout", Integer.class, DEFAULT_SOCKET_TIMEOUT)) //
+      .readPreference(ReadPreference.valueOf(propertyResolver.getProperty("readPreference", DEFAULT_READ_PREFERENCE)))
+      .writeConcern(WriteConcern.valueOf(propertyResolver.getProperty("writeConcern", DEFAULT_WRITE_CONCERN))) //
+      .build();
+  }
+
+  public static class SecondaryReadsCondition implements Condition {
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+      return new RelaxedPropertyResolver(context.getEnvironment(), "mongodb.secondaryReads.")
+        .getProperty("enabled", Boolean.class, false);
+    }
+  }
+
   public static class VersionReadConverter implements Converter<DBObject, Version> {
 
     @Override
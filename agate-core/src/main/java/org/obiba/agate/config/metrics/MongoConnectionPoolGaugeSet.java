@@ -0,0 +1,65 @@
+package org.obiba.agate.config.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Gauges of the MongoDB driver connection pools, read from the statistics the driver publishes in JMX and summed over
+ * all the servers.
+ */
+public class MongoConnectionPoolGaugeSet implements MetricSet {
+
+  private static final Logger log = LoggerFactory.getLogger(MongoConnectionPoolGaugeSet.class);
+
+  private static final String CONNECTION_POOLS = "org.mongodb.driver:type=ConnectionPool,*";
+
+  private final MBeanServer mBeanServer;
+
+  private final ObjectName connectionPools;
+
+  public MongoConnectionPoolGaugeSet() {
+    mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    try {
+      connectionPools = new ObjectName(CONNECTION_POOLS);
+    } catch(MalformedObjectNameException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public Map<String, Metric> getMetrics() {
+    return ImmutableMap.<String, Metric>of( //
+      "size", sumOf("Size"), //
+      "checkedOut", sumOf("CheckedOutCount"), //
+      "waitQueue", sumOf("WaitQueueSize"));
+  }
+
+  private Gauge<Long> sumOf(String attribute) {
+    return () -> {
+      long sum = 0;
+      Set<ObjectName> names = mBeanServer.queryNames(connectionPools, null);
+      for(ObjectName name : names) {
+        try {
+          sum += ((Number) mBeanServer.getAttribute(name, attribute)).longValue();
+        } catch(JMException e) {
+          log.debug("Unable to read {} of {}: {}", attribute, name, e.getMessage());
+        }
+      }
+      return sum;
+    };
+  }
+}
@@ -14,14 +14,19 @@ import java.util.Set;
 
 import javax.validation.constraints.NotNull;
 
+import org.joda.time.DateTime;
 import org.obiba.mongodb.domain.AbstractAuditableDocument;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
  * OAuth2 Authorization: specific to a user and an application, has a timeout and can be revoked anytime by the user.
+ * Authorizations are removed by the database once their expiration date is passed.
  */
 @Document
+@CompoundIndexes({ @CompoundIndex(name = "createdDate", def = "{'createdDate': 1}") })
 public class Authorization extends AbstractAuditableDocument {
 
   @Indexed
@@ -38,6 +43,9 @@ public class Authorization extends AbstractAuditableDocument {
 
   private String redirectURI;
 
+  @Indexed(expireAfterSeconds = 0)
+  private DateTime expiresAt;
+
   public Authorization() {}
 
   public Authorization(String username, String application) {
@@ -92,4 +100,12 @@ public class Authorization extends AbstractAuditableDocument {
   public void setRedirectURI(String redirectURI) {
     this.redirectURI = redirectURI;
   }
+
+  public DateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public void setExpiresAt(DateTime expiresAt) {
+    this.expiresAt = expiresAt;
+  }
 }
@@ -38,6 +38,7 @@ public class Group extends AbstractAuditableDocument {
 
   private String description;
 
+  @Indexed
   private Set<String> applications = Sets.newHashSet();
 
   public Group() {
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.domain;
+
+import org.joda.time.DateTime;
+import org.obiba.mongodb.domain.AbstractAuditableDocument;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import com.google.common.base.Objects;
+
+/**
+ * An html e-mail waiting to be sent: it is removed once sent, and kept as a dead letter if it could not be sent after
+ * several attempts.
+ */
+@Document
+@CompoundIndexes({ @CompoundIndex(name = "status_nextAttempt", def = "{'status': 1, 'nextAttempt': 1}") })
+public class OutgoingMail extends AbstractAuditableDocument {
+
+  private static final long serialVersionUID = -2816537261519604273L;
+
+  public enum Status {
+    QUEUED, // waiting for its next attempt
+    DEAD    // could not be sent
+  }
+
+  private String to;
+
+  private String subject;
+
+  private String html;
+
+  private Status status = Status.QUEUED;
+
+  private int attempts;
+
+  private DateTime nextAttempt;
+
+  private String lastError;
+
+  public OutgoingMail() {
+  }
+
+  public OutgoingMail(String to, String subject, String html) {
+    this.to = to;
+    this.subject = subject;
+    this.html = html;
+  }
+
+  public String getTo() {
+    return to;
+  }
+
+  public void setTo(String to) {
+    this.to = to;
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public void setSubject(String subject) {
+    this.subject = subject;
+  }
+
+  public String getHtml() {
+    return html;
+  }
+
+  public void setHtml(String html) {
+    this.html = html;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public DateTime getNextAttempt() {
+    return nextAttempt;
+  }
+
+  public void setNextAttempt(DateTime nextAttempt) {
+    this.nextAttempt = nextAttempt;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public void setLastError(String lastError) {
+    this.lastError = lastError;
+  }
+
+  @Override
+  protected Objects.ToStringHelper toStringHelper() {
+    return super.toStringHelper().add("to", to) //
+      .add("subject", subject) //
+      .add("status", status) //
+      .add("attempts", attempts);
+  }
+
+}
@@ -14,6 +14,8 @@ import java.util.List;
 
 import org.joda.time.DateTime;
 import org.obiba.mongodb.domain.AbstractAuditableDocument;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -22,9 +24,11 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 
 /**
- * Ticket is the token granted to a user for performing single sign-on.
+ * Ticket is the token granted to a user for performing single sign-on. Tickets are removed by the database once
+ * their expiration date is passed.
  */
 @Document
+@CompoundIndexes({ @CompoundIndex(name = "remembered_createdDate", def = "{'remembered': 1, 'createdDate': 1}") })
 public class Ticket extends AbstractAuditableDocument {
 
   private static final long serialVersionUID = -1309201668631219671L;
@@ -39,8 +43,12 @@ public class Ticket extends AbstractAuditableDocument {
 
   private List<Event> events;
 
+  @Indexed
   private String authorization;
 
+  @Indexed(expireAfterSeconds = 0)
+  private DateTime expiresAt;
+
   public String getUsername() {
     return username;
   }
@@ -81,6 +89,14 @@ public class Ticket extends AbstractAuditableDocument {
     this.authorization = authorization;
   }
 
+  public DateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public void setExpiresAt(DateTime expiresAt) {
+    this.expiresAt = expiresAt;
+  }
+
   @Override
   protected Objects.ToStringHelper toStringHelper() {
     return super.toStringHelper().add("username", username) //
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.domain;
+
+import org.joda.time.DateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.domain.Persistable;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import com.google.common.base.Objects;
+
+/**
+ * Archived {@link Ticket.Event}: the ticket only embeds its most recent events, the whole history is kept in this
+ * append-only collection until it expires. Archived events are never updated, so they are not versioned nor audited.
+ */
+@Document
+@CompoundIndexes({ @CompoundIndex(name = "ticket_time", def = "{'ticket': 1, 'time': -1}") })
+public class TicketEvent implements Persistable<String> {
+
+  private static final long serialVersionUID = 4139626018497862914L;
+
+  @Id
+  private String id;
+
+  private String ticket;
+
+  private String application;
+
+  private String action;
+
+  private DateTime time;
+
+  @Indexed(expireAfterSeconds = 0)
+  private DateTime expiresAt;
+
+  public TicketEvent() {
+  }
+
+  public TicketEvent(String ticket, Ticket.Event event, DateTime expiresAt) {
+    this.ticket = ticket;
+    application = event.getApplication();
+    action = event.getAction();
+    time = event.getTime();
+    this.expiresAt = expiresAt;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public boolean isNew() {
+    return id == null;
+  }
+
+  public String getTicket() {
+    return ticket;
+  }
+
+  public void setTicket(String ticket) {
+    this.ticket = ticket;
+  }
+
+  public String getApplication() {
+    return application;
+  }
+
+  public void setApplication(String application) {
+    this.application = application;
+  }
+
+  public String getAction() {
+    return action;
+  }
+
+  public void setAction(String action) {
+    this.action = action;
+  }
+
+  public DateTime getTime() {
+    return time;
+  }
+
+  public void setTime(DateTime time) {
+    this.time = time;
+  }
+
+  public DateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public void setExpiresAt(DateTime expiresAt) {
+    this.expiresAt = expiresAt;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("id", id) //
+      .add("ticket", ticket) //
+      .add("application", application) //
+      .add("action", action) //
+      .add("time", time).toString();
+  }
+
+}
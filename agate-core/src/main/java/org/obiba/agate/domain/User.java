@@ -12,6 +12,8 @@ import org.joda.time.DateTime;
 import org.obiba.agate.security.AgateUserRealm;
 import org.obiba.agate.security.Roles;
 import org.obiba.mongodb.domain.AbstractAuditableDocument;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -24,6 +26,9 @@ import com.google.common.collect.Sets;
  * A user, for any realm.
  */
 @Document
+@CompoundIndexes({ @CompoundIndex(name = "status_applications", def = "{'status': 1, 'applications': 1}"),
+  @CompoundIndex(name = "status_groups", def = "{'status': 1, 'groups': 1}"),
+  @CompoundIndex(name = "role_lastLogin_status", def = "{'role': 1, 'lastLogin': 1, 'status': 1}") })
 public class User extends AbstractAuditableDocument {
 
   private static final long serialVersionUID = 688200108221675323L;
@@ -48,8 +53,10 @@ public class User extends AbstractAuditableDocument {
 
   private String role = Roles.AGATE_USER.toString();
 
+  @Indexed
   private Set<String> groups = Sets.newHashSet();
 
+  @Indexed
   private Set<String> applications = Sets.newHashSet();
 
   private DateTime lastLogin;
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.event;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.obiba.agate.domain.User;
+
+/**
+ * A batch of users which status was set to inactive, the users only having their ID and name.
+ */
+public class UsersDeactivatedEvent {
+
+  private final List<User> users;
+
+  public UsersDeactivatedEvent(List<User> users) {
+    this.users = users;
+  }
+
+  public List<String> getIds() {
+    return users.stream().map(User::getId).collect(Collectors.toList());
+  }
+
+  public List<String> getNames() {
+    return users.stream().map(User::getName).collect(Collectors.toList());
+  }
+}
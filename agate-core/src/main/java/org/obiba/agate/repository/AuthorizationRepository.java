@@ -12,7 +12,6 @@ package org.obiba.agate.repository;
 
 import java.util.List;
 
-import org.joda.time.DateTime;
 import org.obiba.agate.domain.Authorization;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
@@ -29,6 +28,4 @@ public interface AuthorizationRepository extends MongoRepository<Authorization,
 
   List<Authorization> findByUsernameAndApplication(String username, String application);
 
-  List<Authorization> findByCreatedDateBefore(DateTime localDate);
-
 }
@@ -0,0 +1,78 @@
+package org.obiba.agate.repository;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Strings;
+import com.mongodb.DBCursor;
+
+/**
+ * Cursor based browsing of the documents: pages are delimited by the ID of the last document of the previous page,
+ * and streams read the documents one at a time from a database cursor.
+ */
+@Component
+public class DocumentCursors {
+
+  /**
+   * Maximum number of documents in a page.
+   */
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  /**
+   * Get the documents matching the query, in ID order, starting after the document with the given ID.
+   *
+   * @param query
+   * @param after ID of the last document of the previous page, first page if null or empty
+   * @param limit maximum number of documents, between 1 and {@link #MAX_PAGE_SIZE}
+   * @param entityClass
+   * @param <T>
+   * @return
+   */
+  public <T> List<T> page(Query query, @Nullable String after, int limit, Class<T> entityClass) {
+    if(!Strings.isNullOrEmpty(after)) query.addCriteria(Criteria.where("id").gt(after));
+    // a zero limit would mean no limit at all
+    int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    return mongoTemplate.find(query.with(new Sort(Sort.Direction.ASC, "id")).limit(size), entityClass);
+  }
+
+  /**
+   * Stream the documents matching the query, read from a database cursor. The stream must be closed once consumed.
+   *
+   * @param query
+   * @param entityClass
+   * @param <T>
+   * @return
+   */
+  public <T> Stream<T> stream(Query query, Class<T> entityClass) {
+    MongoConverter converter = mongoTemplate.getConverter();
+    MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(entityClass);
+    QueryMapper queryMapper = new QueryMapper(converter);
+
+    DBCursor cursor = mongoTemplate.getCollection(mongoTemplate.getCollectionName(entityClass))
+      .find(queryMapper.getMappedObject(query.getQueryObject(), entity));
+    if(query.getSortObject() != null) cursor.sort(queryMapper.getMappedObject(query.getSortObject(), entity));
+
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false) //
+      .map(dbObject -> converter.read(entityClass, dbObject)) //
+      .onClose(cursor::close);
+  }
+
+}
@@ -10,6 +10,7 @@
 
 package org.obiba.agate.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.obiba.agate.domain.Group;
@@ -22,5 +23,7 @@ public interface GroupRepository extends MongoRepository<Group, String> {
 
   List<Group> findByName(String name);
 
+  List<Group> findByNameIn(Collection<String> names);
+
   List<Group> findByApplications(String application);
 }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.repository;
+
+import org.obiba.agate.domain.OutgoingMail;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Spring Data MongoDB repository for the e-mails outbox.
+ */
+public interface OutgoingMailRepository extends MongoRepository<OutgoingMail, String> {
+
+  long countByStatus(OutgoingMail.Status status);
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.repository;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Verification that the finders of the repositories are backed by an index: one of the queried fields has to be the
+ * first field of an index, and the query plan must not be a collection scan. The missing indexes are logged at
+ * startup.
+ */
+@Component
+public class RepositoryIndexes implements ApplicationListener<ContextRefreshedEvent> {
+
+  private static final Logger log = LoggerFactory.getLogger(RepositoryIndexes.class);
+
+  private static final String REPOSITORY_PACKAGE = "org.obiba.agate.repository";
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  @Inject
+  private Environment env;
+
+  private final AtomicBoolean verified = new AtomicBoolean();
+
+  @Override
+  public void onApplicationEvent(ContextRefreshedEvent event) {
+    if(!env.getProperty("mongodb.verifyIndexes", Boolean.class, true) || !verified.compareAndSet(false, true)) return;
+    try {
+      verify(getRepositoryInterfaces(event.getApplicationContext()))
+        .forEach(problem -> log.warn("Finder not backed by an index, {}", problem));
+    } catch(RuntimeException e) {
+      log.warn("Unable to verify the repository indexes: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Get the agate repository interfaces of the repository beans.
+   *
+   * @param applicationContext
+   * @return
+   */
+  public Set<Class<?>> getRepositoryInterfaces(ApplicationContext applicationContext) {
+    Set<Class<?>> repositories = Sets.newHashSet();
+    for(Object repository : applicationContext.getBeansOfType(Repository.class).values()) {
+      for(Class<?> type : repository.getClass().getInterfaces()) {
+        if(Repository.class.isAssignableFrom(type) && type.getName().startsWith(REPOSITORY_PACKAGE)) {
+          repositories.add(type);
+        }
+      }
+    }
+    return repositories;
+  }
+
+  /**
+   * Verify the finders declared by the repository interfaces.
+   *
+   * @param repositories
+   * @return the description of each finder which is not backed by an index, empty if all are
+   */
+  public List<String> verify(Collection<Class<?>> repositories) {
+    List<String> problems = Lists.newArrayList();
+    for(Class<?> repository : repositories) {
+      Class<?> domainType = GenericTypeResolver.resolveTypeArguments(repository, Repository.class)[0];
+      List<List<String>> indexes = getIndexes(domainType);
+      for(Method method : repository.getDeclaredMethods()) {
+        List<String> fields = getQueriedFields(method, domainType);
+        if(fields.isEmpty()) continue;
+        String finder = repository.getSimpleName() + "." + method.getName();
+        if(indexes.stream().noneMatch(index -> !index.isEmpty() && fields.contains(index.get(0)))) {
+          problems.add(finder + ": no index starting with one of " + fields);
+        } else if(isCollectionScan(domainType, fields)) {
+          problems.add(finder + ": the query plan is a collection scan");
+        }
+      }
+    }
+    return problems;
+  }
+
+  //
+  // Private methods
+  //
+
+  private List<List<String>> getIndexes(Class<?> domainType) {
+    return mongoTemplate.indexOps(domainType).getIndexInfo().stream().map(IndexInfo::getIndexFields)
+      .map(indexFields -> indexFields.stream().map(field -> field.getKey()).collect(Collectors.toList()))
+      .collect(Collectors.toList());
+  }
+
+  private List<String> getQueriedFields(Method method, Class<?> domainType) {
+    if(method.isDefault() || method.isBridge()) return Lists.newArrayList();
+    try {
+      List<String> fields = Lists.newArrayList();
+      for(Part part : new PartTree(method.getName(), domainType).getParts()) {
+        String path = part.getProperty().toDotPath();
+        fields.add("id".equals(path) ? "_id" : path);
+      }
+      return fields;
+    } catch(PropertyReferenceException e) {
+      // not a derived query
+      return Lists.newArrayList();
+    }
+  }
+
+  /**
+   * Explain a query on the fields, whatever their values.
+   *
+   * @param domainType
+   * @param fields
+   * @return
+   */
+  private boolean isCollectionScan(Class<?> domainType, List<String> fields) {
+    DBObject query = new BasicDBObject();
+    fields.forEach(field -> query.put(field, new BasicDBObject("$exists", true)));
+    String plan = mongoTemplate.getCollection(mongoTemplate.getCollectionName(domainType)).find(query).limit(1)
+      .explain().toString();
+    return plan.contains("COLLSCAN") || plan.contains("BasicCursor");
+  }
+
+}
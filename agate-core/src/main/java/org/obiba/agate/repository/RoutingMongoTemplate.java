@@ -0,0 +1,65 @@
+package org.obiba.agate.repository;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.CursorPreparer;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+
+/**
+ * Template which queries are read with the secondary read preference while the current thread reads from the
+ * secondaries, see {@link #readFromSecondary(boolean)}. Otherwise the read preference of the client applies.
+ * <p/>
+ * <p>
+ * The read preference is set on the query cursor, the shared database and collections being left as is, so that the
+ * same client (and connection pool) serves both.
+ * </p>
+ */
+public class RoutingMongoTemplate extends MongoTemplate {
+
+  private static final ThreadLocal<Boolean> SECONDARY = new ThreadLocal<>();
+
+  private final ReadPreference secondaryReadPreference;
+
+  public RoutingMongoTemplate(MongoDbFactory mongoDbFactory, MongoConverter mongoConverter,
+    ReadPreference secondaryReadPreference) {
+    super(mongoDbFactory, mongoConverter);
+    this.secondaryReadPreference = secondaryReadPreference;
+  }
+
+  /**
+   * Route the next queries of the current thread to the secondaries or back to the primary.
+   *
+   * @param secondary
+   */
+  public static void readFromSecondary(boolean secondary) {
+    if(secondary) SECONDARY.set(true);
+    else SECONDARY.remove();
+  }
+
+  public static boolean isReadingFromSecondary() {
+    return SECONDARY.get() != null;
+  }
+
+  /**
+   * The single document lookups (including by ID) are executed as a query limited to one document, to get a cursor.
+   */
+  @Override
+  protected <T> T doFindOne(String collectionName, DBObject query, DBObject fields, Class<T> entityClass) {
+    if(!isReadingFromSecondary()) return super.doFindOne(collectionName, query, fields, entityClass);
+    List<T> results = doFind(collectionName, query, fields, entityClass, cursor -> cursor.limit(1));
+    return results.isEmpty() ? null : results.get(0);
+  }
+
+  @Override
+  protected <T> List<T> doFind(String collectionName, DBObject query, DBObject fields, Class<T> entityClass,
+    CursorPreparer preparer) {
+    if(!isReadingFromSecondary()) return super.doFind(collectionName, query, fields, entityClass, preparer);
+    return super.doFind(collectionName, query, fields, entityClass,
+      cursor -> (preparer == null ? cursor : preparer.prepare(cursor)).setReadPreference(secondaryReadPreference));
+  }
+}
@@ -0,0 +1,15 @@
+package org.obiba.agate.repository;
+
+import org.obiba.agate.domain.TicketEvent;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Spring Data MongoDB repository for the TicketEvent entity.
+ */
+public interface TicketEventRepository extends MongoRepository<TicketEvent, String> {
+
+  Page<TicketEvent> findByTicket(String ticket, Pageable pageable);
+
+}
@@ -2,7 +2,6 @@ package org.obiba.agate.repository;
 
 import java.util.List;
 
-import org.joda.time.DateTime;
 import org.obiba.agate.domain.Ticket;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
@@ -15,6 +14,4 @@ public interface TicketRepository extends MongoRepository<Ticket, String> {
 
   List<Ticket> findByUsername(String username);
 
-  List<Ticket> findByCreatedDateBeforeAndRemembered(DateTime localDate, boolean remembered);
-
 }
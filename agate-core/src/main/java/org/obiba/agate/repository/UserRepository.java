@@ -2,7 +2,6 @@ package org.obiba.agate.repository;
 
 import java.util.List;
 
-import org.joda.time.DateTime;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.domain.UserStatus;
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -11,7 +10,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 /**
  * Spring Data MongoDB repository for the User entity.
  */
-public interface UserRepository extends MongoRepository<User, String> {
+public interface UserRepository extends MongoRepository<User, String>, UserRepositoryCustom {
 
   List<User> findByName(String username);
 
@@ -21,8 +20,6 @@ public interface UserRepository extends MongoRepository<User, String> {
 
   List<User> findByStatus(UserStatus status);
 
-  List<User> findByRoleAndLastLoginLessThan(String role, DateTime dateTime);
-
   List<User> findByApplications(String application);
 
   List<User> findByEmail(String email);
@@ -0,0 +1,81 @@
+package org.obiba.agate.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.obiba.agate.domain.User;
+import org.obiba.agate.domain.UserStatus;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * Custom queries on the User entity, not derived from the method names.
+ */
+public interface UserRepositoryCustom {
+
+  /**
+   * Stream the users with the given status, having access to the application (explicitly or by one of the groups
+   * granting it) and optionally belonging to one of the groups. The stream must be closed once consumed.
+   *
+   * @param status
+   * @param application
+   * @param applicationGroups names of the groups granting the application
+   * @param groups any group if null or empty
+   * @return
+   */
+  Stream<User> streamByStatusAndApplicationAndGroups(UserStatus status, String application,
+    Collection<String> applicationGroups, @Nullable Collection<String> groups);
+
+  /**
+   * Check if at least one user belongs to the group.
+   *
+   * @param group
+   * @return
+   */
+  boolean existsByGroup(String group);
+
+  /**
+   * Get the names of the groups, among the given ones, that have at least one user.
+   *
+   * @param groups
+   * @return
+   */
+  Set<String> findGroupsInUse(Collection<String> groups);
+
+  /**
+   * Replace the group by another one in the groups of all the users belonging to it: each user is renamed in a single
+   * update, with its version and last modification date, so that the renaming can be run again after a failure.
+   *
+   * @param group
+   * @param newGroup
+   */
+  void renameGroup(String group, String newGroup);
+
+  /**
+   * Apply the changes to the user with the given ID in one atomic update, its version and last modification date are
+   * updated as well.
+   *
+   * @param id
+   * @param changes
+   * @return false if there is no such user
+   */
+  boolean updateFields(String id, Update changes);
+
+  /**
+   * Set the status of a batch of the users with the given role, which last login is older than the given date and
+   * which status is not already the given one. Their version and last modification date are updated as well.
+   *
+   * @param role
+   * @param lastLogin
+   * @param status
+   * @param batchSize maximum number of users updated
+   * @return the updated users, with their ID and name only, empty if there are none left
+   */
+  List<User> updateStatusByRoleAndLastLoginLessThan(String role, DateTime lastLogin, UserStatus status,
+    int batchSize);
+
+}
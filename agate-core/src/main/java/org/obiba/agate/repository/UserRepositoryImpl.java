@@ -0,0 +1,135 @@
+package org.obiba.agate.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.obiba.agate.domain.User;
+import org.obiba.agate.domain.UserStatus;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.google.common.collect.Sets;
+import com.mongodb.BasicDBObject;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+
+/**
+ * Implementation of the {@link UserRepositoryCustom} queries, picked up by Spring Data.
+ */
+public class UserRepositoryImpl implements UserRepositoryCustom {
+
+  private static final int RENAME_BATCH_SIZE = 1000;
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  @Inject
+  private DocumentCursors documentCursors;
+
+  @Override
+  public Stream<User> streamByStatusAndApplicationAndGroups(UserStatus status, String application,
+    Collection<String> applicationGroups, @Nullable Collection<String> groups) {
+    Criteria criteria = Criteria.where("status").is(status)
+      .orOperator(Criteria.where("applications").is(application), Criteria.where("groups").in(applicationGroups));
+    if(groups != null && !groups.isEmpty()) criteria.and("groups").in(groups);
+
+    return documentCursors.stream(new Query(criteria), User.class);
+  }
+
+  @Override
+  public boolean existsByGroup(String group) {
+    // uses the groups index and stops at the first match
+    Query query = Query.query(Criteria.where("groups").is(group)).limit(1);
+    query.fields().include("_id");
+    return mongoTemplate.findOne(query, User.class) != null;
+  }
+
+  @Override
+  public Set<String> findGroupsInUse(Collection<String> groups) {
+    Aggregation aggregation = Aggregation.newAggregation( //
+      match(Criteria.where("groups").in(groups)), //
+      unwind("groups"), //
+      match(Criteria.where("groups").in(groups)), //
+      group("groups"));
+
+    return mongoTemplate.aggregate(aggregation, User.class, BasicDBObject.class).getMappedResults().stream()
+      .map(result -> result.getString("_id")).collect(Collectors.toSet());
+  }
+
+  @Override
+  public void renameGroup(String group, String newGroup) {
+    if(group.equals(newGroup)) return;
+    Query query = Query.query(Criteria.where("groups").is(group)).limit(RENAME_BATCH_SIZE);
+    query.fields().include("_id").include("groups");
+    String collection = mongoTemplate.getCollectionName(User.class);
+    // users renamed or modified meanwhile are not matched anymore, or re-read by the next batch
+    List<BasicDBObject> users;
+    do {
+      users = mongoTemplate.find(query, BasicDBObject.class, collection);
+      users.forEach(user -> renameGroup(user, group, newGroup));
+    } while(!users.isEmpty());
+  }
+
+  @Override
+  public boolean updateFields(String id, Update changes) {
+    changes.inc("version", 1).set("lastModifiedDate", DateTime.now());
+    return mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)), changes, User.class).getN() > 0;
+  }
+
+  @Override
+  public List<User> updateStatusByRoleAndLastLoginLessThan(String role, DateTime lastLogin, UserStatus status,
+    int batchSize) {
+    Query query = Query.query(inactive(role, lastLogin, status)).limit(batchSize);
+    query.fields().include("_id").include("name");
+    List<User> users = mongoTemplate.find(query, User.class);
+    if(users.isEmpty()) return users;
+
+    // a user who logged in or changed status since the selection is left as is
+    List<String> ids = users.stream().map(User::getId).collect(Collectors.toList());
+    int updated = mongoTemplate.updateMulti(Query.query(inactive(role, lastLogin, status).and("_id").in(ids)),
+      new Update().set("status", status).inc("version", 1).set("lastModifiedDate", DateTime.now()), User.class)
+      .getN();
+    if(updated == users.size()) return users;
+
+    Query updatedQuery = Query.query(Criteria.where("_id").in(ids).and("status").is(status));
+    updatedQuery.fields().include("_id").include("name");
+    return mongoTemplate.find(updatedQuery, User.class);
+  }
+
+  //
+  // Private methods
+  //
+
+  private Criteria inactive(String role, DateTime lastLogin, UserStatus status) {
+    return Criteria.where("role").is(role).and("lastLogin").lt(lastLogin).and("status").ne(status);
+  }
+
+  /**
+   * Replace the group in one update of the user, provided its groups did not change since they were read.
+   *
+   * @param user
+   * @param group
+   * @param newGroup
+   */
+  private void renameGroup(BasicDBObject user, String group, String newGroup) {
+    List<?> groups = (List<?>) user.get("groups");
+    Set<Object> renamed = Sets.newLinkedHashSet(groups);
+    renamed.remove(group);
+    renamed.add(newGroup);
+    mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(user.get("_id")).and("groups").is(groups)),
+      new Update().set("groups", renamed).inc("version", 1).set("lastModifiedDate", DateTime.now()), User.class);
+  }
+
+}
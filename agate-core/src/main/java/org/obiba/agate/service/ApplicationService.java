@@ -10,8 +10,11 @@
 
 package org.obiba.agate.service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 
@@ -20,15 +23,21 @@ import org.obiba.agate.domain.Application;
 import org.obiba.agate.domain.Group;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.repository.ApplicationRepository;
+import org.obiba.agate.repository.DocumentCursors;
 import org.obiba.agate.repository.GroupRepository;
 import org.obiba.agate.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.bind.RelaxedPropertyResolver;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.hash.Hashing;
+
 /**
  * Service class for managing applications.
  */
@@ -38,6 +47,8 @@ public class ApplicationService {
 
   private static final Logger log = LoggerFactory.getLogger(ApplicationService.class);
 
+  static final String CREDENTIALS_CACHE = "agateApplications";
+
   @Inject
   private ApplicationRepository applicationRepository;
 
@@ -47,6 +58,9 @@ public class ApplicationService {
   @Inject
   private GroupRepository groupRepository;
 
+  @Inject
+  private DocumentCursors documentCursors;
+
   @Inject
   private Environment env;
 
@@ -66,21 +80,53 @@ public class ApplicationService {
     return applicationRepository.findAll();
   }
 
+  /**
+   * Get a page of {@link Application}s in ID order.
+   *
+   * @param after ID of the last application of the previous page, first page if null or empty
+   * @param limit
+   * @return
+   */
+  public List<Application> findAll(@Nullable String after, int limit) {
+    return documentCursors.page(new Query(), after, limit, Application.class);
+  }
+
+  /**
+   * Stream all the {@link Application}s, the stream must be closed once consumed.
+   *
+   * @return
+   */
+  public Stream<Application> streamAll() {
+    return documentCursors.stream(new Query(), Application.class);
+  }
+
   public Application findByName(@NotNull String name) {
     List<Application> applications = applicationRepository.findByName(name);
     return applications == null || applications.isEmpty() ? null : applications.get(0);
   }
 
+  /**
+   * Check the application credentials. Valid credentials are cached by application name and key digest, so that the
+   * iterated key hash and the database lookup are performed only once.
+   *
+   * @param name
+   * @param key
+   * @return
+   */
+  @Cacheable(value = CREDENTIALS_CACHE,
+    key = "T(org.obiba.agate.service.ApplicationService).credentialsKey(#name, #key)", unless = "!#result")
   public boolean isValid(String name, String key) {
     List<Application> applications = applicationRepository.findByNameAndKey(name, hashKey(key));
     return applications != null && !applications.isEmpty();
   }
 
+  @CacheEvict(value = CREDENTIALS_CACHE, allEntries = true)
   public void save(@NotNull Application application) {
     if (application.isNew()) application.setNameAsId();
     applicationRepository.save(application);
   }
 
+  @CacheEvict(value = CREDENTIALS_CACHE, allEntries = true)
   public void delete(@NotNull String id) {
     Application application = getApplication(id);
     List<User> users = userRepository.findByApplications(application.getName());
@@ -98,4 +144,15 @@ public class ApplicationService {
     return new Sha512Hash(key, propertyResolver.getProperty("salt"),
       propertyResolver.getProperty("nbHashIterations", Integer.class)).toString();
   }
+
+  /**
+   * Cache key of the application credentials: the key is not kept as is, only its digest.
+   *
+   * @param name
+   * @param key
+   * @return
+   */
+  public static String credentialsKey(String name, String key) {
+    return name + ":" + (key == null ? "" : Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString());
+  }
 }
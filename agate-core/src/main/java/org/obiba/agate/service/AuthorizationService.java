@@ -23,7 +23,6 @@ import org.obiba.agate.event.ApplicationDeletedEvent;
 import org.obiba.agate.event.AuthorizationDeletedEvent;
 import org.obiba.agate.event.UserDeletedEvent;
 import org.obiba.agate.repository.AuthorizationRepository;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.google.common.eventbus.EventBus;
@@ -48,12 +47,16 @@ public class AuthorizationService {
   private EventBus eventBus;
 
   /**
-   * Persist the {@link Authorization}.
+   * Persist the {@link Authorization}. Set the {@link Authorization}'s expiration date if none.
    *
    * @param authorization
    * @return
    */
   public Authorization save(Authorization authorization) {
+    if(authorization.getExpiresAt() == null) {
+      authorization.setExpiresAt(getExpirationDate(
+        authorization.getCreatedDate() == null ? DateTime.now() : authorization.getCreatedDate()));
+    }
     return authorizationRepository.save(authorization);
   }
 
@@ -187,15 +190,6 @@ public class AuthorizationService {
     delete(authorizationRepository.findByApplication(event.getPersistable().getName()));
   }
 
-  /**
-   * Remove the expired {@link Authorization}s.
-   */
-  @Scheduled(cron = "0 0/15 * * * *")
-  public void removeExpired() {
-    delete(authorizationRepository
-      .findByCreatedDateBefore(DateTime.now().minusHours(configurationService.getConfiguration().getLongTimeout())));
-  }
-
   //
   // Private methods
   //
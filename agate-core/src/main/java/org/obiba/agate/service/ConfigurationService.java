@@ -1,7 +1,10 @@
 package org.obiba.agate.service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
@@ -28,10 +31,16 @@ import org.springframework.stereotype.Component;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.Hashing;
 
 @Component
 public class ConfigurationService {
 
+  private static final String JOIN_FORM = "join";
+
+  private static final String PROFILE_FORM = "profile";
+
   @Inject
   private AgateConfigRepository agateConfigRepository;
 
@@ -46,6 +55,12 @@ public class ConfigurationService {
 
   private final AesCipherService cipherService = new AesCipherService();
 
+  /**
+   * Replaced by a fresh map when the configuration is updated: a form rendered from the previous configuration is put
+   * in the map it was looked up in, which is then discarded.
+   */
+  private volatile Map<String, RenderedForm> renderedForms = new ConcurrentHashMap<>();
+
   @Cacheable(value = "agateConfig", key = "#root.methodName")
   public Configuration getConfiguration() {
     return getOrCreateConfiguration();
@@ -129,10 +144,50 @@ public class ConfigurationService {
     return rval;
   }
 
+  /**
+   * Get the serialized join form, rendered once until the configuration is updated.
+   *
+   * @return
+   * @throws JSONException
+   * @throws IOException
+   */
+  public RenderedForm getJoinForm() throws JSONException, IOException {
+    Map<String, RenderedForm> forms = renderedForms;
+    RenderedForm form = forms.get(JOIN_FORM);
+    return form == null ? putRenderedForm(forms, JOIN_FORM, new RenderedForm(getJoinConfiguration())) : form;
+  }
+
+  /**
+   * Get the serialized profile form, rendered once until the configuration is updated.
+   *
+   * @return
+   * @throws JSONException
+   * @throws IOException
+   */
+  public RenderedForm getProfileForm() throws JSONException, IOException {
+    Map<String, RenderedForm> forms = renderedForms;
+    RenderedForm form = forms.get(PROFILE_FORM);
+    return form == null ? putRenderedForm(forms, PROFILE_FORM, new RenderedForm(getProfileConfiguration())) : form;
+  }
+
+  //
+  // Event handling
+  //
+
+  @Subscribe
+  public void onConfigUpdated(AgateConfigUpdatedEvent event) {
+    renderedForms = new ConcurrentHashMap<>();
+  }
+
   //
   // Private methods
   //
 
+  private RenderedForm putRenderedForm(Map<String, RenderedForm> forms, String name, RenderedForm form) {
+    RenderedForm rendered = forms.putIfAbsent(name, form);
+    return rendered == null ? form : rendered;
+  }
+
   private JSONObject getJoinSchema(Configuration config) throws JSONException {
     return getUserFormSchema(config, config.isJoinWithUsername());
   }
@@ -278,4 +333,27 @@ public class ConfigurationService {
   private byte[] getSecretKey() {
     return Hex.decode(getOrCreateConfiguration().getSecretKey());
   }
+
+  /**
+   * Json representation of a form and its entity tag.
+   */
+  public static class RenderedForm {
+
+    private final byte[] content;
+
+    private final String etag;
+
+    private RenderedForm(JSONObject form) {
+      content = form.toString().getBytes(StandardCharsets.UTF_8);
+      etag = Hashing.sha1().hashBytes(content).toString();
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+  }
 }
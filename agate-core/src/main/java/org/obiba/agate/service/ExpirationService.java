@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.obiba.agate.domain.Authorization;
+import org.obiba.agate.domain.Configuration;
+import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.event.AgateConfigUpdatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Expiry of the {@link Ticket}s and {@link Authorization}s.
+ * <p/>
+ * <p>
+ * Documents are removed by the database once their expiration date is passed (TTL index on "expiresAt"). The
+ * periodic sweep only removes what the TTL monitor has not: documents without expiration date, or which expiration
+ * date was computed with longer timeouts. It does so with set-based deletions by batches of IDs, the tickets of the
+ * expired authorizations included, and evicts the cached tokens of the removed tickets.
+ * </p>
+ */
+@Component
+public class ExpirationService {
+
+  private static final Logger log = LoggerFactory.getLogger(ExpirationService.class);
+
+  private static final int BATCH_SIZE = 1000;
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  @Inject
+  private ConfigurationService configurationService;
+
+  @Inject
+  private TokenCache tokenCache;
+
+  private volatile int shortTimeout;
+
+  private volatile int longTimeout;
+
+  @PostConstruct
+  public void init() {
+    Configuration config = configurationService.getConfiguration();
+    shortTimeout = config.getShortTimeout();
+    longTimeout = config.getLongTimeout();
+  }
+
+  /**
+   * Remove the expired {@link Authorization}s with their {@link Ticket}s, and the expired {@link Ticket}s.
+   * This is scheduled to get fired every 15 minutes.
+   */
+  @Scheduled(cron = "0 0/15 * * * *")
+  public void removeExpired() {
+    removeExpired(configurationService.getConfiguration());
+  }
+
+  //
+  // Event handling
+  //
+
+  /**
+   * The expiration dates already set are left as is: when a timeout is shortened, the sweep is run right away to
+   * remove the documents created before the new timeout, whereas when it is lengthened, the existing documents keep
+   * their expiration date.
+   *
+   * @param event
+   */
+  @Subscribe
+  public void onConfigUpdated(AgateConfigUpdatedEvent event) {
+    Configuration config = (Configuration) event.getPersistable();
+    if(config.getShortTimeout() == shortTimeout && config.getLongTimeout() == longTimeout) return;
+    if(config.getShortTimeout() < shortTimeout || config.getLongTimeout() < longTimeout) {
+      removeExpired(config);
+    } else {
+      shortTimeout = config.getShortTimeout();
+      longTimeout = config.getLongTimeout();
+    }
+  }
+
+  //
+  // Private methods
+  //
+
+  private void removeExpired(Configuration config) {
+    shortTimeout = config.getShortTimeout();
+    longTimeout = config.getLongTimeout();
+    DateTime now = DateTime.now();
+    removeExpiredAuthorizations(now.minusHours(config.getLongTimeout()));
+    removeExpiredTickets(now.minusHours(config.getShortTimeout()), now.minusHours(config.getLongTimeout()));
+  }
+
+  /**
+   * Remove the authorizations and their tickets, by batches of IDs.
+   *
+   * @param createdBefore
+   */
+  private void removeExpiredAuthorizations(DateTime createdBefore) {
+    Query query = Query.query(Criteria.where("createdDate").lt(createdBefore)).limit(BATCH_SIZE);
+    query.fields().include("_id");
+    List<String> ids;
+    do {
+      ids = mongoTemplate.find(query, Authorization.class).stream().map(Authorization::getId)
+        .collect(Collectors.toList());
+      if(ids.isEmpty()) return;
+      int tickets = removeTickets(Criteria.where("authorization").in(ids));
+      mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Authorization.class);
+      log.debug("Removed {} expired authorizations and their {} tickets", ids.size(), tickets);
+    } while(ids.size() == BATCH_SIZE);
+  }
+
+  private void removeExpiredTickets(DateTime notRememberedCreatedBefore, DateTime rememberedCreatedBefore) {
+    int tickets = removeTickets(new Criteria().orOperator( //
+      Criteria.where("remembered").is(false).and("createdDate").lt(notRememberedCreatedBefore), //
+      Criteria.where("remembered").is(true).and("createdDate").lt(rememberedCreatedBefore)));
+    if(tickets > 0) log.debug("Removed {} expired tickets", tickets);
+  }
+
+  /**
+   * Remove the matching tickets by batches of IDs, and evict their cached tokens.
+   *
+   * @param criteria
+   * @return the number of removed tickets
+   */
+  private int removeTickets(Criteria criteria) {
+    Query query = Query.query(criteria).limit(BATCH_SIZE);
+    query.fields().include("_id");
+    int removed = 0;
+    List<String> ids;
+    do {
+      ids = mongoTemplate.find(query, Ticket.class).stream().map(Ticket::getId).collect(Collectors.toList());
+      if(ids.isEmpty()) break;
+      removed += mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Ticket.class).getN();
+      tokenCache.evictAll(ids);
+    } while(ids.size() == BATCH_SIZE);
+    return removed;
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+
+import org.obiba.agate.domain.Group;
+import org.obiba.agate.domain.User;
+import org.obiba.agate.repository.GroupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * In-memory index of the applications granted by each {@link Group}, so that the effective applications of a
+ * {@link User} can be resolved without querying the groups. The index is updated when a group is saved or deleted
+ * through the {@link UserService}. Updates and reloads are mutually exclusive, so that an update is not lost by a
+ * reload started before it.
+ */
+@Component
+public class GroupApplicationsIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(GroupApplicationsIndex.class);
+
+  @Inject
+  private GroupRepository groupRepository;
+
+  private volatile Map<String, Set<String>> applicationsByGroup;
+
+  /**
+   * Check if a {@link Group} with the given name exists.
+   *
+   * @param group
+   * @return
+   */
+  public boolean hasGroup(@NotNull String group) {
+    return getIndex().containsKey(group);
+  }
+
+  /**
+   * Get the applications granted by the group.
+   *
+   * @param group
+   * @return empty if group is not found
+   */
+  @NotNull
+  public Set<String> getApplications(@NotNull String group) {
+    Set<String> applications = getIndex().get(group);
+    return applications == null ? ImmutableSet.of() : applications;
+  }
+
+  /**
+   * Get the names of the groups granting the application.
+   *
+   * @param application
+   * @return
+   */
+  @NotNull
+  public Set<String> getGroups(@NotNull String application) {
+    return getIndex().entrySet().stream().filter(e -> e.getValue().contains(application)).map(Map.Entry::getKey)
+      .collect(Collectors.toSet());
+  }
+
+  /**
+   * Get all the applications the user has access to: explicitly defined and inherited from the groups.
+   *
+   * @param user
+   * @return
+   */
+  @NotNull
+  public Set<String> getEffectiveApplications(@NotNull User user) {
+    Set<String> applications = Sets.newTreeSet();
+    if(user.hasApplications()) applications.addAll(user.getApplications());
+    if(user.hasGroups()) user.getGroups().forEach(g -> applications.addAll(getApplications(g)));
+    return applications;
+  }
+
+  /**
+   * Check if the user has access to the application, either explicitly or through one of its groups.
+   *
+   * @param user
+   * @param application
+   * @return
+   */
+  public boolean hasApplication(@NotNull User user, @NotNull String application) {
+    return user.hasApplication(application) ||
+      user.hasGroups() && user.getGroups().stream().anyMatch(g -> getApplications(g).contains(application));
+  }
+
+  /**
+   * Index the applications of a saved {@link Group}.
+   *
+   * @param group
+   */
+  public synchronized void update(@NotNull Group group) {
+    getIndex().put(group.getName(), applicationsOf(group));
+  }
+
+  /**
+   * Remove a deleted {@link Group} from the index.
+   *
+   * @param group
+   */
+  public synchronized void remove(@NotNull Group group) {
+    getIndex().remove(group.getName());
+  }
+
+  /**
+   * Reload the index from the database, in case groups were modified by another Agate instance.
+   * This is scheduled to get fired every 5 minutes.
+   */
+  @Scheduled(cron = "0 0/5 * * * *")
+  public synchronized void refresh() {
+    applicationsByGroup = load();
+  }
+
+  //
+  // Private methods
+  //
+
+  private Map<String, Set<String>> getIndex() {
+    if(applicationsByGroup == null) {
+      synchronized(this) {
+        if(applicationsByGroup == null) applicationsByGroup = load();
+      }
+    }
+    return applicationsByGroup;
+  }
+
+  private Map<String, Set<String>> load() {
+    Map<String, Set<String>> index = new ConcurrentHashMap<>();
+    groupRepository.findAll().forEach(g -> index.put(g.getName(), applicationsOf(g)));
+    log.debug("Indexed applications of {} groups", index.size());
+    return index;
+  }
+
+  private Set<String> applicationsOf(Group group) {
+    return group.getApplications() == null ? ImmutableSet.of() : ImmutableSet.copyOf(group.getApplications());
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+
+import org.joda.time.DateTime;
+import org.obiba.agate.domain.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+
+/**
+ * Coalescing tracker of the {@link User}s last login: the most recent login time of each user is kept in memory and
+ * written in one bulk of targeted updates, every few seconds. The last login times which could not be written are
+ * retried with the next bulk.
+ */
+@Component
+public class LastLoginTracker {
+
+  private static final Logger log = LoggerFactory.getLogger(LastLoginTracker.class);
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  private final Map<String, DateTime> pending = new ConcurrentHashMap<>();
+
+  /**
+   * Record that the user with the given name has just logged in.
+   *
+   * @param username
+   */
+  public void record(@NotNull String username) {
+    pending.put(username, DateTime.now());
+  }
+
+  /**
+   * Write the pending last login times, only the most recent one per user.
+   * This is scheduled to get fired every 5 seconds by default.
+   */
+  @Scheduled(fixedDelayString = "${users.lastLogin.flushInterval:5000}")
+  public synchronized void flush() {
+    if(pending.isEmpty()) return;
+
+    BulkWriteOperation bulk = mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+      .initializeUnorderedBulkOperation();
+    Map<String, DateTime> lastLogins = new HashMap<>();
+    Date now = new Date();
+    for(String username : pending.keySet()) {
+      DateTime lastLogin = pending.remove(username);
+      if(lastLogin == null) continue;
+      lastLogins.put(username, lastLogin);
+      // same audit fields as the other bulk updates of the users
+      bulk.find(new BasicDBObject("name", username)).updateOne(
+        new BasicDBObject("$set", new BasicDBObject("lastLogin", lastLogin.toDate()).append("lastModifiedDate", now))
+          .append("$inc", new BasicDBObject("version", 1)));
+    }
+    if(lastLogins.isEmpty()) return;
+
+    try {
+      bulk.execute();
+    } catch(RuntimeException e) {
+      log.warn("Unable to update the last login of {} users, will retry: {}", lastLogins.size(), e.getMessage());
+      // put them back for the next flush, unless the user has logged in again meanwhile
+      lastLogins.forEach((username, lastLogin) -> pending.merge(username, lastLogin,
+        (recorded, failed) -> recorded.isAfter(failed) ? recorded : failed));
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    log.info("Updating {} pending user last logins", pending.size());
+    flush();
+  }
+
+}
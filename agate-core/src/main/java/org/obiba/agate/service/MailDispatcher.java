@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import javax.validation.constraints.NotNull;
+
+import org.obiba.agate.config.AsyncConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
+import org.springframework.core.env.Environment;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Dispatcher of bulk e-mails: each submission is accepted at once and drained in the background by the bulk e-mails
+ * executor, which reads the e-mails lazily and sends them in batches, each batch over a single SMTP connection, at a
+ * limited rate. The progress of each submission can be followed with its {@link Job}.
+ */
+@Component
+public class MailDispatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+
+  private static final int DEFAULT_BATCH_SIZE = 50;
+
+  private static final double DEFAULT_RATE = 10;
+
+  private static final long JOB_RETENTION_HOURS = 24;
+
+  @Inject
+  private Environment env;
+
+  @Inject
+  private MailService mailService;
+
+  @Inject
+  private JavaMailSenderImpl javaMailSender;
+
+  // defined in AsyncConfiguration
+  @Inject
+  @Named(AsyncConfiguration.BULK_MAIL_EXECUTOR)
+  private Executor senders;
+
+  private final Cache<String, Job> jobs = CacheBuilder.newBuilder()
+    .expireAfterAccess(JOB_RETENTION_HOURS, TimeUnit.HOURS).build();
+
+  private RateLimiter rateLimiter;
+
+  private int batchSize;
+
+  @PostConstruct
+  public void init() {
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(env, "mail.bulk.");
+    batchSize = propertyResolver.getProperty("batchSize", Integer.class, DEFAULT_BATCH_SIZE);
+    if(batchSize < 1) {
+      log.warn("Invalid mail.bulk.batchSize {}, using {}", batchSize, DEFAULT_BATCH_SIZE);
+      batchSize = DEFAULT_BATCH_SIZE;
+    }
+    rateLimiter = RateLimiter.create(propertyResolver.getProperty("rate", Double.class, DEFAULT_RATE));
+  }
+
+  /**
+   * Accept the e-mails for sending: they are read lazily, and sent in batches, by a background task. The stream is
+   * closed by this task once consumed.
+   *
+   * @param owner name of the application requesting the mails
+   * @param mails
+   * @return the job following the sending progress
+   * @throws MailQueueFullException if too many jobs are pending, none of the e-mails being sent
+   */
+  public Job submit(@NotNull String owner, @NotNull Stream<Mail> mails) {
+    Job job = new Job(owner);
+    try {
+      senders.execute(() -> drain(job, mails));
+    } catch(RejectedExecutionException e) {
+      mails.close();
+      throw new MailQueueFullException(job.getId());
+    }
+    jobs.put(job.getId(), job);
+    log.info("Accepted e-mails job {}", job.getId());
+    return job;
+  }
+
+  /**
+   * Get a job by its ID.
+   *
+   * @param id
+   * @return null if not found or expired
+   */
+  @Nullable
+  public Job getJob(@NotNull String id) {
+    return jobs.getIfPresent(id);
+  }
+
+  //
+  // Private methods
+  //
+
+  private void drain(Job job, Stream<Mail> mails) {
+    try(Stream<Mail> toSend = mails) {
+      List<Mail> batch = Lists.newArrayListWithCapacity(batchSize);
+      for(Mail mail : (Iterable<Mail>) toSend::iterator) {
+        batch.add(mail);
+        if(batch.size() == batchSize) {
+          job.total.addAndGet(batch.size());
+          send(job, batch);
+          batch = Lists.newArrayListWithCapacity(batchSize);
+        }
+      }
+      if(!batch.isEmpty()) {
+        job.total.addAndGet(batch.size());
+        send(job, batch);
+      }
+    } catch(RuntimeException e) {
+      log.error("E-mails job {} stopped after {} e-mails, exception is: {}", job.getId(), job.getTotal(),
+        e.getMessage());
+    } finally {
+      job.submitted.set(true);
+    }
+    log.info("Sent {} e-mails of job {} ({} failed)", job.getSent(), job.getId(), job.getFailed());
+  }
+
+  private void send(Job job, List<Mail> batch) {
+    List<MimeMessage> messages = Lists.newArrayListWithCapacity(batch.size());
+    for(Mail mail : batch) {
+      try {
+        messages.add(mailService.createMimeMessage(mail.getTo(), mail.getSubject(), mail.getHtml()));
+      } catch(MessagingException e) {
+        log.warn("E-mail could not be built for '{}', exception is: {}", mail.getTo(), e.getMessage());
+        job.failed.incrementAndGet();
+      }
+    }
+    if(messages.isEmpty()) return;
+
+    rateLimiter.acquire(messages.size());
+    try {
+      // all the messages go through the same connection
+      javaMailSender.send(messages.toArray(new MimeMessage[messages.size()]));
+      job.sent.addAndGet(messages.size());
+    } catch(MailSendException e) {
+      int failures = e.getFailedMessages().isEmpty() ? messages.size() : e.getFailedMessages().size();
+      log.warn("{} e-mails of job {} could not be sent, exception is: {}", failures, job.getId(), e.getMessage());
+      job.sent.addAndGet(messages.size() - failures);
+      job.failed.addAndGet(failures);
+    } catch(MailException e) {
+      log.warn("{} e-mails of job {} could not be sent, exception is: {}", messages.size(), job.getId(),
+        e.getMessage());
+      job.failed.addAndGet(messages.size());
+    }
+  }
+
+  /**
+   * An html message to be sent.
+   */
+  public static class Mail {
+
+    private final String to;
+
+    private final String subject;
+
+    private final String html;
+
+    public Mail(String to, String subject, String html) {
+      this.to = to;
+      this.subject = subject;
+      this.html = html;
+    }
+
+    public String getTo() {
+      return to;
+    }
+
+    public String getSubject() {
+      return subject;
+    }
+
+    public String getHtml() {
+      return html;
+    }
+  }
+
+  /**
+   * Progress of a bulk e-mails submission.
+   */
+  public static class Job {
+
+    private final String id = UUID.randomUUID().toString();
+
+    private final String owner;
+
+    private final AtomicInteger total = new AtomicInteger();
+
+    private final AtomicInteger sent = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final AtomicBoolean submitted = new AtomicBoolean(false);
+
+    private Job(String owner) {
+      this.owner = owner;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getOwner() {
+      return owner;
+    }
+
+    /**
+     * Number of e-mails read so far.
+     *
+     * @return
+     */
+    public int getTotal() {
+      return total.get();
+    }
+
+    public int getSent() {
+      return sent.get();
+    }
+
+    public int getFailed() {
+      return failed.get();
+    }
+
+    public boolean isDone() {
+      return submitted.get() && sent.get() + failed.get() >= total.get();
+    }
+  }
+
+}
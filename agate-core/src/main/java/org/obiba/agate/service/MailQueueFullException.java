@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+/**
+ * Too many bulk e-mails jobs are pending: the job was not started, none of its e-mails were sent.
+ */
+public class MailQueueFullException extends RuntimeException {
+
+  private final String jobId;
+
+  public MailQueueFullException(String jobId) {
+    super(String.format("E-mails queue is full, job %s was not started", jobId));
+    this.jobId = jobId;
+  }
+
+  public String getJobId() {
+    return jobId;
+  }
+}
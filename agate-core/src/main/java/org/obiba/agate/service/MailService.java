@@ -1,27 +1,48 @@
 package org.obiba.agate.service;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.mail.MessagingException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
+import org.joda.time.DateTime;
+import org.obiba.agate.config.AsyncConfiguration;
+import org.obiba.agate.domain.OutgoingMail;
+import org.obiba.agate.repository.OutgoingMailRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
 import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.mail.MailException;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 
 /**
  * Service for sending e-mails.
  * <p/>
  * <p>
- * We use the @Async annotation to send e-mails asynchronously.
+ * E-mails are first stored in an outbox and then sent asynchronously by a dedicated pool of senders. Failed e-mails
+ * are retried with an exponential backoff and kept as dead letters after too many attempts.
  * </p>
  */
 @Service
@@ -29,50 +50,187 @@ public class MailService {
 
   private static final Logger log = LoggerFactory.getLogger(MailService.class);
 
+  private static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+  private static final long DEFAULT_RETRY_DELAY = 30000;
+
+  private static final long DEFAULT_LEASE = 300000;
+
+  private static final int POLL_SIZE = 100;
+
+  private static final long GAUGE_TIMEOUT_SECONDS = 10;
+
   @Inject
   private Environment env;
 
   @Inject
   private JavaMailSenderImpl javaMailSender;
 
+  @Inject
+  private OutgoingMailRepository outgoingMailRepository;
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  @Inject
+  private MetricRegistry metricRegistry;
+
+  @Inject
+  @Named(AsyncConfiguration.MAIL_EXECUTOR)
+  private Executor senders;
+
   /**
    * System default email address that sends the e-mails.
    */
   private String from;
 
+  private int maxAttempts;
+
+  private long retryDelay;
+
+  private long lease;
+
+  private Timer sendTimer;
+
+  private Meter failures;
+
   @PostConstruct
   public void init() {
     from = env.getProperty("spring.mail.from");
     if(Strings.isNullOrEmpty(from)) {
       from = "agate@example.org";
     }
+
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(env, "mail.outbox.");
+    maxAttempts = propertyResolver.getProperty("maxAttempts", Integer.class, DEFAULT_MAX_ATTEMPTS);
+    retryDelay = propertyResolver.getProperty("retryDelay", Long.class, DEFAULT_RETRY_DELAY);
+    lease = propertyResolver.getProperty("lease", Long.class, DEFAULT_LEASE);
+
+    sendTimer = metricRegistry.timer(MetricRegistry.name(MailService.class, "outbox", "send"));
+    failures = metricRegistry.meter(MetricRegistry.name(MailService.class, "outbox", "failures"));
+    metricRegistry.register(MetricRegistry.name(MailService.class, "outbox", "queued"),
+      new StatusCountGauge(OutgoingMail.Status.QUEUED));
+    metricRegistry.register(MetricRegistry.name(MailService.class, "outbox", "dead"),
+      new StatusCountGauge(OutgoingMail.Status.DEAD));
   }
 
   /**
-   * Send an html message.
+   * Send an html message: the message is stored in the outbox and sent asynchronously.
    *
    * @param to
    * @param subject
    * @param text
    */
-  @Async
   public void sendEmail(String to, String subject, String html) {
+    OutgoingMail mail = new OutgoingMail(to, subject, html);
+    // leased right away to this sender
+    mail.setNextAttempt(DateTime.now().plus(lease));
+    outgoingMailRepository.save(mail);
+    submit(mail);
+  }
+
+  /**
+   * Send the outbox e-mails which next attempt is due.
+   * This is scheduled to get fired every 10 seconds by default.
+   */
+  @Scheduled(fixedDelayString = "${mail.outbox.pollInterval:10000}")
+  public void sendQueuedEmails() {
+    for(int i = 0; i < POLL_SIZE; i++) {
+      OutgoingMail mail = lease();
+      if(mail == null) return;
+      submit(mail);
+    }
+  }
+
+  /**
+   * Build an html message from the system default email address.
+   *
+   * @param to
+   * @param subject
+   * @param html
+   * @return
+   * @throws MessagingException
+   */
+  public MimeMessage createMimeMessage(String to, String subject, String html) throws MessagingException {
     MimeMessage message = javaMailSender.createMimeMessage();
+    // use the true flag to indicate you need a multipart message
+    MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+    helper.setTo(to);
+    message.setFrom(new InternetAddress(from));
+    message.setSubject(subject);
+    // use the true flag to indicate the text included is HTML
+    helper.setText(html, true);
+    return message;
+  }
+
+  //
+  // Private methods
+  //
+
+  /**
+   * Atomically take the lease of the next due e-mail, so that no other sender attempts it meanwhile.
+   *
+   * @return null if no e-mail is due
+   */
+  private OutgoingMail lease() {
+    DateTime now = DateTime.now();
+    Query query = Query.query(Criteria.where("status").is(OutgoingMail.Status.QUEUED).and("nextAttempt").lte(now))
+      .with(new Sort("nextAttempt"));
+    return mongoTemplate.findAndModify(query, new Update().set("nextAttempt", now.plus(lease)),
+      FindAndModifyOptions.options().returnNew(true), OutgoingMail.class);
+  }
+
+  private void submit(OutgoingMail mail) {
     try {
-      // use the true flag to indicate you need a multipart message
-      MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-      helper.setTo(to);
-      message.setFrom(new InternetAddress(from));
-      message.setSubject(subject);
-      // use the true flag to indicate the text included is HTML
-      helper.setText(html, true);
-
-      javaMailSender.send(message);
-      log.debug("Sent e-mail to User '{}'!", to);
-    } catch(MailException me) {
-      log.warn("E-mail could not be sent to user '{}', exception is: {}", to, me.getMessage());
-    } catch(MessagingException e) {
-      log.warn("E-mail could not be sent to user '{}', exception is: {}", to, e.getMessage());
+      senders.execute(() -> send(mail));
+    } catch(RejectedExecutionException e) {
+      // the mail senders are saturated
+      log.debug("E-mail to '{}' will be sent once its lease has expired", mail.getTo());
+    }
+  }
+
+  private void send(OutgoingMail mail) {
+    try(Timer.Context ignored = sendTimer.time()) {
+      javaMailSender.send(createMimeMessage(mail.getTo(), mail.getSubject(), mail.getHtml()));
+      outgoingMailRepository.delete(mail.getId());
+      log.debug("Sent e-mail to User '{}'!", mail.getTo());
+    } catch(MailException | MessagingException e) {
+      failures.mark();
+      retryOrBury(mail, e);
+    }
+  }
+
+  private void retryOrBury(OutgoingMail mail, Exception e) {
+    int attempts = mail.getAttempts() + 1;
+    Update update = new Update().set("attempts", attempts).set("lastError", e.getMessage());
+    if(attempts >= maxAttempts) {
+      log.error("E-mail could not be sent to user '{}' after {} attempts, exception is: {}", mail.getTo(), attempts,
+        e.getMessage());
+      update.set("status", OutgoingMail.Status.DEAD).unset("nextAttempt");
+    } else {
+      long delay = retryDelay << Math.min(attempts - 1, 20);
+      log.warn("E-mail could not be sent to user '{}', next attempt in {}s, exception is: {}", mail.getTo(),
+        delay / 1000, e.getMessage());
+      update.set("nextAttempt", DateTime.now().plus(delay));
+    }
+    mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(mail.getId())), update, OutgoingMail.class);
+  }
+
+  /**
+   * Number of outbox e-mails with a given status, counted at most every few seconds.
+   */
+  private class StatusCountGauge extends CachedGauge<Long> {
+
+    private final OutgoingMail.Status status;
+
+    private StatusCountGauge(OutgoingMail.Status status) {
+      super(GAUGE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      this.status = status;
+    }
+
+    @Override
+    protected Long loadValue() {
+      return outgoingMailRepository.countByStatus(status);
     }
   }
 }
@@ -10,6 +10,8 @@
 
 package org.obiba.agate.service;
 
+import java.util.Collection;
+
 import javax.ws.rs.BadRequestException;
 
 public class NotOrphanGroupException extends BadRequestException {
@@ -28,4 +30,8 @@ public class NotOrphanGroupException extends BadRequestException {
     return new NotOrphanGroupException("Group with name '" + name + "' has user(s)");
   }
 
+  public static NotOrphanGroupException withNames(Collection<String> names) {
+    return new NotOrphanGroupException("Groups with names '" + String.join("', '", names) + "' have user(s)");
+  }
+
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+
+import org.obiba.agate.domain.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring4.SpringTemplateEngine;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+
+/**
+ * Rendering of the notification templates for many recipients. The template is processed for each recipient, unless
+ * it is explicitly marked as spliceable with a <code>&lt;!--/* agate:spliceable *&#47;--&gt;</code> comment: it is then
+ * rendered once and the escaped recipient's values are spliced in the rendered text. A spliceable template can only
+ * print the recipient's properties with <code>th:text="${user.firstName}"</code> (or lastName, name, email), any other
+ * use of the recipient makes it rendered for each recipient.
+ */
+@Component
+public class NotificationRenderer {
+
+  private static final Logger log = LoggerFactory.getLogger(NotificationRenderer.class);
+
+  private static final String DEFAULT_PREFIX = "classpath:/templates/";
+
+  private static final String DEFAULT_SUFFIX = ".html";
+
+  private static final Pattern SPLICEABLE_MARKER = Pattern.compile("<!--/\\*\\s*agate:spliceable\\s*\\*/-->");
+
+  private static final Pattern USER_EXPRESSION = Pattern.compile("\\$\\{\\s*user\\b");
+
+  private static final Pattern USER_TEXT = Pattern
+    .compile("th:text=\"\\$\\{user\\.(firstName|lastName|name|email)\\}\"");
+
+  private static final Map<String, Function<User, String>> USER_PROPERTIES = ImmutableMap
+    .<String, Function<User, String>>of("firstName", User::getFirstName, "lastName", User::getLastName, "name",
+      User::getName, "email", User::getEmail);
+
+  @Inject
+  private SpringTemplateEngine templateEngine;
+
+  @Inject
+  private ResourceLoader resourceLoader;
+
+  @Inject
+  private Environment env;
+
+  private final Map<String, Boolean> spliceableTemplates = new ConcurrentHashMap<>();
+
+  /**
+   * Prepare the rendering of the template for each recipient, the recipient being the "user" variable.
+   *
+   * @param templateLocation
+   * @param ctx variables shared by all the recipients
+   * @return the rendering function, not thread-safe
+   */
+  public Function<User, String> prepare(@NotNull String templateLocation, @NotNull Context ctx) {
+    boolean spliceable = env.getProperty("spring.thymeleaf.cache", Boolean.class, true)
+      ? spliceableTemplates.computeIfAbsent(templateLocation, this::isSpliceable)
+      : isSpliceable(templateLocation);
+    Function<User, String> perRecipient = user -> {
+      ctx.setVariable("user", user);
+      return templateEngine.process(templateLocation, ctx);
+    };
+    if(!spliceable) return perRecipient;
+
+    // render once with placeholders for the user's properties
+    String token = UUID.randomUUID().toString().replace("-", "");
+    User placeholder = new User(placeholder(token, "name"), null);
+    placeholder.setFirstName(placeholder(token, "firstName"));
+    placeholder.setLastName(placeholder(token, "lastName"));
+    placeholder.setEmail(placeholder(token, "email"));
+    ctx.setVariable("user", placeholder);
+    String rendered = templateEngine.process(templateLocation, ctx);
+
+    List<String> sections = Lists.newArrayList();
+    List<Function<User, String>> values = Lists.newArrayList();
+    Matcher matcher = Pattern.compile(placeholder(token, "(" + Joiner.on('|').join(USER_PROPERTIES.keySet()) + ")"))
+      .matcher(rendered);
+    int start = 0;
+    while(matcher.find()) {
+      sections.add(rendered.substring(start, matcher.start()));
+      values.add(USER_PROPERTIES.get(matcher.group(1)));
+      start = matcher.end();
+    }
+    sections.add(rendered.substring(start));
+
+    // the placeholders were transformed by the template, they cannot be replaced
+    if(sections.stream().anyMatch(section -> section.contains(token))) {
+      log.warn("Template '{}' transforms the recipient's properties, it is rendered for each recipient",
+        templateLocation);
+      spliceableTemplates.put(templateLocation, false);
+      return perRecipient;
+    }
+
+    return user -> {
+      StringBuilder builder = new StringBuilder(rendered.length());
+      for(int i = 0; i < values.size(); i++) {
+        builder.append(sections.get(i));
+        String value = values.get(i).apply(user);
+        if(value != null) builder.append(HtmlUtils.htmlEscape(value, StandardCharsets.UTF_8.name()));
+      }
+      return builder.append(sections.get(values.size())).toString();
+    };
+  }
+
+  //
+  // Private methods
+  //
+
+  private String placeholder(String token, String property) {
+    return "agate" + token + property + "x";
+  }
+
+  /**
+   * Check that the template is marked as spliceable and that every reference to the user in the template is one of the
+   * user's properties printed as a text.
+   *
+   * @param templateLocation
+   * @return
+   */
+  private boolean isSpliceable(String templateLocation) {
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(env, "spring.thymeleaf.");
+    Resource resource = resourceLoader.getResource(propertyResolver.getProperty("prefix", DEFAULT_PREFIX) +
+      templateLocation + propertyResolver.getProperty("suffix", DEFAULT_SUFFIX));
+    if(!resource.exists()) return false;
+
+    try(Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+      String source = CharStreams.toString(reader);
+      return SPLICEABLE_MARKER.matcher(source).find() && !source.contains("th:include") &&
+        !source.contains("th:replace") && count(USER_EXPRESSION, source) == count(USER_TEXT, source);
+    } catch(IOException e) {
+      log.warn("Unable to read template '{}': {}", templateLocation, e.getMessage());
+      return false;
+    }
+  }
+
+  private int count(Pattern pattern, String source) {
+    int count = 0;
+    for(Matcher matcher = pattern.matcher(source); matcher.find(); ) count++;
+    return count;
+  }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.validation.constraints.NotNull;
+
+import org.obiba.agate.config.AsyncConfiguration;
+import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.domain.TicketEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+
+/**
+ * Write-behind recorder of the {@link Ticket.Event}s: events are queued in memory and appended to their ticket in
+ * batches, every few seconds or as soon as enough events are pending. The ticket only keeps its most recent events,
+ * the whole history is archived as {@link TicketEvent}s.
+ */
+@Component
+public class TicketEventRecorder {
+
+  private static final Logger log = LoggerFactory.getLogger(TicketEventRecorder.class);
+
+  private static final int DEFAULT_BATCH_SIZE = 100;
+
+  private static final int DEFAULT_HISTORY_SIZE = 50;
+
+  private static final int DEFAULT_RETENTION_DAYS = 90;
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  @Inject
+  private Environment env;
+
+  // defined in AsyncConfiguration
+  @Inject
+  @Named(AsyncConfiguration.MAINTENANCE_EXECUTOR)
+  private Executor executor;
+
+  private final BlockingQueue<PendingEvent> queue = new LinkedBlockingQueue<>();
+
+  private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+  private int batchSize;
+
+  private int historySize;
+
+  private int retentionDays;
+
+  @PostConstruct
+  public void init() {
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(env, "tickets.events.");
+    batchSize = propertyResolver.getProperty("batchSize", Integer.class, DEFAULT_BATCH_SIZE);
+    historySize = propertyResolver.getProperty("historySize", Integer.class, DEFAULT_HISTORY_SIZE);
+    retentionDays = propertyResolver.getProperty("retentionDays", Integer.class, DEFAULT_RETENTION_DAYS);
+  }
+
+  /**
+   * Queue an event for the {@link Ticket} with the given ID.
+   *
+   * @param ticketId
+   * @param application
+   * @param action
+   */
+  public void record(@NotNull String ticketId, String application, String action) {
+    queue.add(new PendingEvent(ticketId, new Ticket.Event(application, action)));
+    if(queue.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        flushRequested.set(false);
+        flush();
+      });
+    }
+  }
+
+  /**
+   * Append the pending events to their tickets, one update per ticket, and to the events archive.
+   * This is scheduled to get fired every second by default.
+   */
+  @Scheduled(fixedDelayString = "${tickets.events.flushInterval:1000}")
+  public synchronized void flush() {
+    List<PendingEvent> pending = Lists.newArrayList();
+    queue.drainTo(pending);
+    if(pending.isEmpty()) return;
+
+    // keep the events in their recording order for each ticket
+    Map<String, List<Ticket.Event>> eventsByTicket = Maps.newLinkedHashMap();
+    pending.forEach(p -> eventsByTicket.computeIfAbsent(p.ticketId, k -> Lists.newArrayList()).add(p.event));
+
+    eventsByTicket.forEach((ticketId, events) -> {
+      try {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(ticketId)), pushEvents(events), Ticket.class);
+      } catch(RuntimeException e) {
+        log.warn("Unable to record {} events of ticket '{}': {}", events.size(), ticketId, e.getMessage());
+      }
+    });
+
+    try {
+      mongoTemplate.insert(pending.stream()
+        .map(p -> new TicketEvent(p.ticketId, p.event, p.event.getTime().plusDays(retentionDays)))
+        .collect(Collectors.toList()), TicketEvent.class);
+    } catch(RuntimeException e) {
+      log.warn("Unable to archive {} ticket events: {}", pending.size(), e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    log.info("Flushing {} pending ticket events", queue.size());
+    flush();
+  }
+
+  /**
+   * Push the events at the end of the ticket's embedded events, keeping only the most recent ones.
+   *
+   * @param events
+   * @return
+   */
+  private Update pushEvents(List<Ticket.Event> events) {
+    BasicDBList values = new BasicDBList();
+    events.forEach(e -> values.add(mongoTemplate.getConverter().convertToMongoType(e)));
+    return new BasicUpdate(new BasicDBObject("$push",
+      new BasicDBObject("events", new BasicDBObject("$each", values).append("$slice", -historySize))));
+  }
+
+  private static class PendingEvent {
+
+    private final String ticketId;
+
+    private final Ticket.Event event;
+
+    private PendingEvent(String ticketId, Ticket.Event event) {
+      this.ticketId = ticketId;
+      this.event = event;
+    }
+  }
+
+}
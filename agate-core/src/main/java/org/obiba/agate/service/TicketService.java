@@ -2,7 +2,9 @@ package org.obiba.agate.service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -11,20 +13,24 @@ import javax.ws.rs.ForbiddenException;
 import org.joda.time.DateTime;
 import org.obiba.agate.domain.Authorization;
 import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.domain.TicketEvent;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.event.AuthorizationDeletedEvent;
 import org.obiba.agate.event.UserDeletedEvent;
+import org.obiba.agate.repository.DocumentCursors;
+import org.obiba.agate.repository.TicketEventRepository;
 import org.obiba.agate.repository.TicketRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import com.google.common.eventbus.Subscribe;
 import com.mysql.jdbc.StringUtils;
 
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureException;
 
 @Service
@@ -44,6 +50,18 @@ public class TicketService {
   @Inject
   private AuthorizationService authorizationService;
 
+  @Inject
+  private TokenCache tokenCache;
+
+  @Inject
+  private TicketEventRecorder ticketEventRecorder;
+
+  @Inject
+  private TicketEventRepository ticketEventRepository;
+
+  @Inject
+  private DocumentCursors documentCursors;
+
   /**
    * Create or reuse a ticket for the given username.
    *
@@ -60,8 +78,8 @@ public class TicketService {
     Ticket ticket = new Ticket();
     ticket.setUsername(username);
     ticket.setRemembered(rememberMe);
-    ticket.addEvent(application, "login");
     save(ticket);
+    addEvent(ticket, application, "login");
 
     return ticket;
   }
@@ -81,13 +99,41 @@ public class TicketService {
       ticket.setUsername(authorization.getUsername());
       ticket.setRemembered(false);
       ticket.setAuthorization(authorization.getId());
+      // expires with its authorization, if not before
+      DateTime expiresAt = getExpirationDate(DateTime.now(), false);
+      DateTime authorizationExpiresAt = authorizationService.getExpirationDate(authorization);
+      ticket.setExpiresAt(expiresAt.isBefore(authorizationExpiresAt) ? expiresAt : authorizationExpiresAt);
+      save(ticket);
     }
-    ticket.addEvent(authorization.getApplication(), "access_token");
-    save(ticket);
+    addEvent(ticket, authorization.getApplication(), "access_token");
 
     return ticket;
   }
 
+  /**
+   * Add an event to an existing {@link Ticket}. The event is appended to the persisted ticket asynchronously, the
+   * ticket keeping only its most recent events.
+   *
+   * @param ticket
+   * @param application application name issuing the event
+   * @param action
+   */
+  public void addEvent(@NotNull Ticket ticket, String application, String action) {
+    addEvent(ticket.getId(), application, action);
+  }
+
+  /**
+   * Add an event to an existing {@link Ticket}, by ID.
+   *
+   * @param ticketId
+   * @param application application name issuing the event
+   * @param action
+   * @see #addEvent(Ticket, String, String)
+   */
+  public void addEvent(@NotNull String ticketId, String application, String action) {
+    ticketEventRecorder.record(ticketId, application, action);
+  }
+
   /**
    * Find all {@link Ticket}.
    *
@@ -97,6 +143,26 @@ public class TicketService {
     return ticketRepository.findAll();
   }
 
+  /**
+   * Get a page of {@link Ticket}s in ID order.
+   *
+   * @param after ID of the last ticket of the previous page, first page if null or empty
+   * @param limit
+   * @return
+   */
+  public List<Ticket> findAll(@Nullable String after, int limit) {
+    return documentCursors.page(new Query(), after, limit, Ticket.class);
+  }
+
+  /**
+   * Stream all the {@link Ticket}s, the stream must be closed once consumed.
+   *
+   * @return
+   */
+  public Stream<Ticket> streamAll() {
+    return documentCursors.stream(new Query(), Ticket.class);
+  }
+
   /**
    * Find {@link Ticket} by its ID or token.
    *
@@ -121,14 +187,48 @@ public class TicketService {
    */
   public Ticket findByToken(@NotNull String token) {
     try {
-      Claims claims = Jwts.parser().setSigningKey(configurationService.getConfiguration().getSecretKey().getBytes())
-        .parseClaimsJws(token).getBody();
-      return ticketRepository.findOne(claims.getId());
+      return ticketRepository.findOne(tokenCache.verify(token).getTicketId());
     } catch(SignatureException e) {
       throw new ForbiddenException();
     }
   }
 
+  /**
+   * Get the verified token of an existing {@link Ticket}, with the ticket ID and username. The ticket is only loaded
+   * the first time the token is verified, afterwards the token is valid until the ticket expires or is deleted.
+   *
+   * @param token
+   * @return
+   * @throws NoSuchTicketException
+   */
+  @NotNull
+  public TokenCache.VerifiedToken verifyToken(@NotNull String token) throws NoSuchTicketException {
+    TokenCache.VerifiedToken verified;
+    try {
+      verified = tokenCache.verify(token);
+    } catch(SignatureException e) {
+      throw new ForbiddenException();
+    }
+    if(!verified.isTicketFound()) {
+      Ticket ticket = ticketRepository.findOne(verified.getTicketId());
+      if(ticket == null) throw NoSuchTicketException.withToken(token);
+      verified.setTicketFound(ticket);
+    }
+    return verified;
+  }
+
+  /**
+   * Get a page of the archived events of a {@link Ticket}, most recent first.
+   *
+   * @param id ticket ID
+   * @param page
+   * @param size
+   * @return
+   */
+  public Page<TicketEvent> findEvents(@NotNull String id, int page, int size) {
+    return ticketEventRepository.findByTicket(id, new PageRequest(page, size, Sort.Direction.DESC, "time"));
+  }
+
   /**
    * Get all {@link Ticket}s for the user name.
    *
@@ -161,11 +261,15 @@ public class TicketService {
   }
 
   /**
-   * Insert or update the {@link Ticket}. Set the {@link Ticket}'s token if none.
+   * Insert or update the {@link Ticket}. Set the {@link Ticket}'s expiration date if none.
    *
    * @param ticket
    */
   public void save(@NotNull @Valid Ticket ticket) {
+    if(ticket.getExpiresAt() == null) {
+      ticket.setExpiresAt(getExpirationDate(
+        ticket.getCreatedDate() == null ? DateTime.now() : ticket.getCreatedDate(), ticket.isRemembered()));
+    }
     ticketRepository.save(ticket);
   }
 
@@ -207,26 +311,6 @@ public class TicketService {
     deleteAll(ticketRepository.findByUsername(event.getPersistable().getName()));
   }
 
-  /**
-   * Remembered tickets have to be removed once expired.
-   * This is scheduled to get fired everyday, at midnight.
-   */
-  @Scheduled(cron = "0 0 0 * * *")
-  public void removeExpiredRemembered() {
-    removeExpired(ticketRepository.findByCreatedDateBeforeAndRemembered(
-      DateTime.now().minusHours(configurationService.getConfiguration().getLongTimeout()), true));
-  }
-
-  /**
-   * Not remembered tickets have to be removed once expired.
-   * This is scheduled to get fired every 15 minutes.
-   */
-  @Scheduled(cron = "0 0/15 * * * *")
-  public void removeExpiredNotRemembered() {
-    removeExpired(ticketRepository.findByCreatedDateBeforeAndRemembered(
-      DateTime.now().minusHours(configurationService.getConfiguration().getShortTimeout()), false));
-  }
-
   //
   // Private methods
   //
@@ -255,13 +339,9 @@ public class TicketService {
   }
 
   private void deleteById(@NotNull String id) {
-    if(!StringUtils.isNullOrEmpty(id)) ticketRepository.delete(id);
-  }
-
-  private void removeExpired(List<Ticket> tickets) {
-    for(Ticket ticket : tickets) {
-      // TODO deactivate instead of delete
-      ticketRepository.delete(ticket);
+    if(!StringUtils.isNullOrEmpty(id)) {
+      ticketRepository.delete(id);
+      tokenCache.evict(id);
     }
   }
 }
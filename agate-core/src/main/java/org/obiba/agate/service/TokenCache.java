@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.service;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+
+import org.joda.time.DateTime;
+import org.obiba.agate.domain.Ticket;
+import org.springframework.stereotype.Component;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+/**
+ * Cache of the access tokens (json web tokens) which signature has already been verified. Each entry lives no longer
+ * than the token's own expiration date. The cached tokens are indexed by ticket ID, so that the tokens of a ticket are
+ * evicted without going through the whole cache.
+ */
+@Component
+public class TokenCache {
+
+  public static final String CACHE_NAME = "agateTokens";
+
+  @Inject
+  private CacheManager cacheManager;
+
+  @Inject
+  private ConfigurationService configurationService;
+
+  private Ehcache cache;
+
+  private final Map<String, Set<String>> ticketTokens = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  public void init() {
+    cacheManager.addCacheIfAbsent(CACHE_NAME);
+    cache = cacheManager.getEhcache(CACHE_NAME);
+    cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+      @Override
+      public void notifyElementRemoved(Ehcache ehcache, Element element) {
+        unindex(element);
+      }
+
+      @Override
+      public void notifyElementExpired(Ehcache ehcache, Element element) {
+        unindex(element);
+      }
+
+      @Override
+      public void notifyElementEvicted(Ehcache ehcache, Element element) {
+        unindex(element);
+      }
+
+      @Override
+      public void notifyRemoveAll(Ehcache ehcache) {
+        ticketTokens.clear();
+      }
+    });
+  }
+
+  /**
+   * Get the verified token, parsing it and verifying its signature only if it is not already in the cache.
+   *
+   * @param token
+   * @return
+   * @throws io.jsonwebtoken.SignatureException
+   */
+  @NotNull
+  public VerifiedToken verify(@NotNull String token) {
+    Element element = cache.get(token);
+    if(element != null) {
+      VerifiedToken verified = (VerifiedToken) element.getObjectValue();
+      if(!verified.isExpired()) return verified;
+      cache.remove(token);
+    }
+
+    Claims claims = Jwts.parser().setSigningKey(configurationService.getConfiguration().getSecretKey().getBytes())
+      .parseClaimsJws(token).getBody();
+    VerifiedToken verified = new VerifiedToken(claims);
+    Element newElement = new Element(token, verified);
+    if(claims.getExpiration() != null) {
+      long ttl = (claims.getExpiration().getTime() - System.currentTimeMillis()) / 1000;
+      if(ttl <= 0) return verified;
+      long maxTtl = cache.getCacheConfiguration().getTimeToLiveSeconds();
+      newElement.setTimeToLive((int) Math.min(ttl, maxTtl > 0 ? maxTtl : Integer.MAX_VALUE));
+    }
+    index(token, verified);
+    cache.put(newElement);
+
+    return verified;
+  }
+
+  /**
+   * Remove the cached tokens of the {@link org.obiba.agate.domain.Ticket}.
+   *
+   * @param ticketId
+   */
+  public void evict(@NotNull String ticketId) {
+    Set<String> tokens = ticketTokens.remove(ticketId);
+    if(tokens != null) cache.removeAll(tokens);
+  }
+
+  /**
+   * Remove the cached tokens of the {@link org.obiba.agate.domain.Ticket}s.
+   *
+   * @param ticketIds
+   */
+  public void evictAll(@NotNull Collection<String> ticketIds) {
+    ticketIds.forEach(this::evict);
+  }
+
+  /**
+   * Remove all the cached tokens.
+   */
+  public void clear() {
+    cache.removeAll();
+  }
+
+  //
+  // Private methods
+  //
+
+  private void index(String token, VerifiedToken verified) {
+    if(verified.getTicketId() == null) return;
+    ticketTokens.computeIfAbsent(verified.getTicketId(), id -> ConcurrentHashMap.newKeySet()).add(token);
+  }
+
+  private void unindex(Element element) {
+    VerifiedToken verified = (VerifiedToken) element.getObjectValue();
+    if(verified == null || verified.getTicketId() == null) return;
+    ticketTokens.computeIfPresent(verified.getTicketId(), (id, tokens) -> {
+      tokens.remove(element.getObjectKey());
+      return tokens.isEmpty() ? null : tokens;
+    });
+  }
+
+  /**
+   * The claims of a token which signature was verified, with the ticket it was issued for. Once the ticket was found,
+   * the token is valid until the ticket expires or is deleted, and the ticket fields from which an access token is made
+   * are kept so that the token can be renewed without loading the ticket again.
+   */
+  public static class VerifiedToken {
+
+    private final Claims claims;
+
+    private volatile boolean ticketFound;
+
+    private volatile DateTime ticketExpiresAt;
+
+    private volatile DateTime ticketCreatedDate;
+
+    private volatile boolean ticketRemembered;
+
+    private volatile String ticketAuthorization;
+
+    public VerifiedToken(Claims claims) {
+      this.claims = claims;
+    }
+
+    public Claims getClaims() {
+      return claims;
+    }
+
+    public String getTicketId() {
+      return claims.getId();
+    }
+
+    public String getUsername() {
+      return claims.getSubject();
+    }
+
+    public boolean isTicketFound() {
+      return ticketFound;
+    }
+
+    /**
+     * The ticket of the token exists, until its expiration date if any.
+     *
+     * @param ticket
+     */
+    public void setTicketFound(@NotNull Ticket ticket) {
+      ticketExpiresAt = ticket.getExpiresAt();
+      ticketCreatedDate = ticket.getCreatedDate();
+      ticketRemembered = ticket.isRemembered();
+      ticketAuthorization = ticket.getAuthorization();
+      ticketFound = true;
+    }
+
+    /**
+     * Get a detached copy of the ticket that was found, without its events.
+     *
+     * @return
+     */
+    public Ticket getTicket() {
+      Ticket ticket = new Ticket();
+      ticket.setId(getTicketId());
+      ticket.setUsername(getUsername());
+      ticket.setCreatedDate(ticketCreatedDate);
+      ticket.setRemembered(ticketRemembered);
+      ticket.setAuthorization(ticketAuthorization);
+      ticket.setExpiresAt(ticketExpiresAt);
+      return ticket;
+    }
+
+    public boolean isExpired() {
+      Date expiration = claims.getExpiration();
+      return expiration != null && expiration.before(new Date()) ||
+        ticketExpiresAt != null && ticketExpiresAt.isBeforeNow();
+    }
+  }
+
+}
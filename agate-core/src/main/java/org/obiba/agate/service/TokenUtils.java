@@ -59,6 +59,9 @@ public class TokenUtils {
   @Inject
   private ConfigurationService configurationService;
 
+  @Inject
+  private TokenCache tokenCache;
+
   /**
    * Make an access token (json web token) for the ticket.
    *
@@ -96,8 +99,7 @@ public class TokenUtils {
    */
   public void validateAccessToken(@NotNull String token, @NotNull String application) {
     try {
-      Claims claims = Jwts.parser().setSigningKey(configurationService.getConfiguration().getSecretKey().getBytes())
-        .parseClaimsJws(token).getBody();
+      Claims claims = tokenCache.verify(token).getClaims();
       if(!getIssuerID().equals(claims.getIssuer())) throw new InvalidTokenException("Token issuer is not valid");
       if(!claims.getAudience().contains(application)) {
         throw new InvalidTokenException("Token is not for '" + application + "'");
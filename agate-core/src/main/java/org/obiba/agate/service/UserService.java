@@ -2,11 +2,14 @@ package org.obiba.agate.service;
 
 import java.io.IOException;
 import java.security.SignatureException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
@@ -26,6 +29,8 @@ import org.obiba.agate.domain.UserCredentials;
 import org.obiba.agate.domain.UserStatus;
 import org.obiba.agate.event.UserApprovedEvent;
 import org.obiba.agate.event.UserJoinedEvent;
+import org.obiba.agate.event.UsersDeactivatedEvent;
+import org.obiba.agate.repository.DocumentCursors;
 import org.obiba.agate.repository.GroupRepository;
 import org.obiba.agate.repository.UserCredentialsRepository;
 import org.obiba.agate.repository.UserRepository;
@@ -36,16 +41,22 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.boot.bind.RelaxedPropertyResolver;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.PropertyResolver;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.spring4.SpringTemplateEngine;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
-import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.mongodb.DBObject;
 
 /**
  * Service class for managing users.
@@ -58,6 +69,8 @@ public class UserService {
 
   private static final int MINIMUM_LEMGTH = 8;
 
+  private static final int INACTIVE_USERS_BATCH_SIZE = 1000;
+
   @Inject
   private UserRepository userRepository;
 
@@ -67,6 +80,15 @@ public class UserService {
   @Inject
   private GroupRepository groupRepository;
 
+  @Inject
+  private GroupApplicationsIndex groupApplicationsIndex;
+
+  @Inject
+  private DocumentCursors documentCursors;
+
+  @Inject
+  private LastLoginTracker lastLoginTracker;
+
   @Inject
   private Environment env;
 
@@ -82,6 +104,9 @@ public class UserService {
   @Inject
   private ConfigurationService configurationService;
 
+  @Inject
+  private MetricRegistry metricRegistry;
+
   //
   // Finders
   //
@@ -100,22 +125,52 @@ public class UserService {
   }
 
   /**
-   * Find active users having access to the provided application and optionally belonging to the specified group.
+   * Get a page of {@link org.obiba.agate.domain.User}s in ID order.
+   *
+   * @param status any status if null
+   * @param after ID of the last user of the previous page, first page if null or empty
+   * @param limit
+   * @return
+   */
+  public List<User> findUsers(@Nullable UserStatus status, @Nullable String after, int limit) {
+    return documentCursors.page(usersQuery(status), after, limit, User.class);
+  }
+
+  /**
+   * Stream all the {@link org.obiba.agate.domain.User}s, the stream must be closed once consumed.
+   *
+   * @param status any status if null
+   * @return
+   */
+  public Stream<User> streamUsers(@Nullable UserStatus status) {
+    return documentCursors.stream(usersQuery(status), User.class);
+  }
+
+  /**
+   * Stream the active users having access to the provided application and optionally belonging to the specified group.
+   * Users are filtered by the database and read one at a time, the stream must be closed once consumed.
    *
    * @param application
    * @param group any group if null or empty
    * @return
    */
-  public List<User> findActiveUsersByApplicationAndGroup(@NotNull String application, @Nullable String group) {
-    List<String> groupNames = groupRepository.findByApplications(application).stream() //
-      .map(Group::getName) //
-      .collect(Collectors.toList());
+  public Stream<User> findActiveUsersByApplicationAndGroup(@NotNull String application, @Nullable String group) {
+    return findActiveUsersByApplicationAndGroups(application,
+      Strings.isNullOrEmpty(group) ? null : Collections.singleton(group));
+  }
 
-    return (Strings.isNullOrEmpty(group)
-      ? userRepository.findByStatus(UserStatus.ACTIVE)
-      : userRepository.findByStatusAndGroups(UserStatus.ACTIVE, group)).stream() //
-      .filter(user -> (user.hasApplication(application) || user.hasOneOfGroup(groupNames)) && user.hasGroup(group)) //
-      .collect(Collectors.toList());
+  /**
+   * Stream the active users having access to the provided application and optionally belonging to one of the specified
+   * groups, each user once. The stream must be closed once consumed.
+   *
+   * @param application
+   * @param groups any group if null or empty
+   * @return
+   */
+  public Stream<User> findActiveUsersByApplicationAndGroups(@NotNull String application,
+    @Nullable Collection<String> groups) {
+    return userRepository.streamByStatusAndApplicationAndGroups(UserStatus.ACTIVE, application,
+      groupApplicationsIndex.getGroups(application), groups);
   }
 
   public List<User> findActiveUserByApplication(@NotNull String username, @NotNull String application) {
@@ -124,24 +179,20 @@ public class UserService {
 
   public List<User> findActiveUserByApplicationAndGroup(@NotNull String username, @NotNull String application,
     @Nullable String group) {
-    List<String> groupNames = groupRepository.findByApplications(application).stream() //
-      .map(Group::getName) //
-      .collect(Collectors.toList());
-
     return (Strings.isNullOrEmpty(group)
       ? userRepository.findByNameAndStatus(username, UserStatus.ACTIVE)
       : userRepository.findByNameAndStatusAndGroups(username, UserStatus.ACTIVE, group)).stream() //
-      .filter(user -> (user.hasApplication(application) || user.hasOneOfGroup(groupNames)) && user.hasGroup(group)) //
+      .filter(user -> hasApplication(user, application) && user.hasGroup(group)) //
       .collect(Collectors.toList());
   }
 
   /**
-   * Find active users having access to the provided application.
+   * Stream the active users having access to the provided application, the stream must be closed once consumed.
    *
    * @param application
    * @return
    */
-  public List<User> findActiveUsersByApplication(@NotNull String application) {
+  public Stream<User> findActiveUsersByApplication(@NotNull String application) {
     return findActiveUsersByApplicationAndGroup(application, null);
   }
 
@@ -191,7 +242,8 @@ public class UserService {
     currentUser.setFirstName(firstName);
     currentUser.setLastName(lastName);
     currentUser.setEmail(email);
-    userRepository.save(currentUser);
+    updateFields(currentUser.getId(),
+      new Update().set("firstName", firstName).set("lastName", lastName).set("email", email));
     log.debug("Changed information for User: {}", currentUser);
   }
 
@@ -269,6 +321,27 @@ public class UserService {
     return saved;
   }
 
+  /**
+   * Apply field changes ($set, $addToSet etc.) to an existing {@link org.obiba.agate.domain.User} in one atomic update,
+   * instead of reading and saving the whole document. Email conflicts are detected by its unique index.
+   *
+   * @param id
+   * @param changes
+   * @throws org.obiba.agate.service.NoSuchUserException
+   * @throws org.obiba.agate.service.EmailAlreadyAssignedException
+   */
+  public void updateFields(@NotNull String id, @NotNull Update changes) {
+    boolean updated;
+    try {
+      updated = userRepository.updateFields(id, changes);
+    } catch(DuplicateKeyException e) {
+      DBObject set = (DBObject) changes.getUpdateObject().get("$set");
+      if(set != null && set.containsField("email")) throw new EmailAlreadyAssignedException((String) set.get("email"));
+      throw e;
+    }
+    if(!updated) throw NoSuchUserException.withId(id);
+  }
+
   public UserCredentials save(@NotNull UserCredentials userCredentials) {
     userCredentialsRepository.save(userCredentials);
     return userCredentials;
@@ -282,7 +355,7 @@ public class UserService {
     UserStatus prevStatus = user.getStatus();
 
     user.setStatus(status);
-    save(user);
+    update(user, new Update().set("status", status));
 
     if(prevStatus == UserStatus.PENDING && user.getStatus() == UserStatus.APPROVED)
       eventBus.post(new UserApprovedEvent(user));
@@ -300,27 +373,41 @@ public class UserService {
     userCredentialsRepository.save(userCredentials);
 
     user.setStatus(UserStatus.ACTIVE);
-    save(user);
+    update(user, new Update().set("status", UserStatus.ACTIVE));
   }
 
+  /**
+   * Record the last login of the user, the user is updated asynchronously.
+   *
+   * @param username
+   */
   public void updateUserLastLogin(@NotNull String username) {
-    User user = findUser(username);
-
-    if(user != null) {
-      user.setLastLogin(DateTime.now());
-      save(user);
-    }
+    lastLoginTracker.record(username);
   }
 
+  /**
+   * Set the status of the users who did not log in for too long to inactive, by batches. A
+   * {@link UsersDeactivatedEvent} is posted for each batch.
+   */
   @Scheduled(cron = "0 0 0 * * ?") //every day at midnight
   public void removeInactiveUsers() {
-    List<User> inactiveUsers = userRepository.findByRoleAndLastLoginLessThan("agate-user",
-      DateTime.now().minusHours(configurationService.getConfiguration().getInactiveTimeout()));
+    lastLoginTracker.flush();
+    DateTime lastLogin = DateTime.now().minusHours(configurationService.getConfiguration().getInactiveTimeout());
+
+    int count = 0;
+    try(Timer.Context ignored = metricRegistry.timer(MetricRegistry.name(UserService.class, "inactive", "sweep"))
+      .time()) {
+      List<User> users;
+      do {
+        users = userRepository.updateStatusByRoleAndLastLoginLessThan("agate-user", lastLogin, UserStatus.INACTIVE,
+          INACTIVE_USERS_BATCH_SIZE);
+        if(!users.isEmpty()) eventBus.post(new UsersDeactivatedEvent(users));
+        count += users.size();
+      } while(users.size() == INACTIVE_USERS_BATCH_SIZE);
+    }
 
-    inactiveUsers.forEach(u -> {
-      u.setStatus(UserStatus.INACTIVE);
-      userRepository.save(u);
-    });
+    metricRegistry.histogram(MetricRegistry.name(UserService.class, "inactive", "count")).update(count);
+    if(count > 0) log.info("{} users deactivated", count);
   }
 
   public void resetPassword(User user) throws IOException {
@@ -357,9 +444,10 @@ public class UserService {
     ctx.setVariable("organization", organization);
     ctx.setVariable("publicUrl", configurationService.getPublicUrl());
 
-    administrators.stream().forEach(u -> mailService
-      .sendEmail(u.getEmail(), "[" + organization + "] " + propertyResolver.getProperty("pendingForReviewSubject"),
-        templateEngine.process("pendingForReviewEmail", ctx)));
+    // same message for all the administrators
+    String reviewSubject = "[" + organization + "] " + propertyResolver.getProperty("pendingForReviewSubject");
+    String reviewEmail = administrators.isEmpty() ? null : templateEngine.process("pendingForReviewEmail", ctx);
+    administrators.forEach(u -> mailService.sendEmail(u.getEmail(), reviewSubject, reviewEmail));
 
     mailService
       .sendEmail(user.getEmail(), "[" + organization + "] " + propertyResolver.getProperty("pendingForApprovalSubject"),
@@ -442,34 +530,45 @@ public class UserService {
   }
 
   /**
-   * Update user profile from a JSON representation.
+   * Update user profile from a JSON representation. The attribute names are the keys of the attributes document, so
+   * they cannot contain '.' nor '$'.
    *
    * @param user
    * @param profile
    * @throws JSONException
+   * @throws BadRequestException if an attribute name is not valid
    */
   public void updateUserProfile(User user, JSONObject profile) throws JSONException {
     Iterable<String> iterable = () -> profile.keys();
+    StreamSupport.stream(iterable.spliterator(), false).filter(k -> !isValidAttributeName(k)).findFirst()
+      .ifPresent(k -> {
+        throw new BadRequestException("Invalid profile attribute name: " + k);
+      });
+
+    Update changes = new Update();
     StreamSupport.stream(iterable.spliterator(), false).forEach(k -> {
       String value = null;
       try {
         value = profile.getString(k);
         if("firstname".equals(k)) {
           user.setFirstName(value);
+          changes.set("firstName", value);
         } else if("lastname".equals(k)) {
           user.setLastName(value);
+          changes.set("lastName", value);
         } else if("email".equals(k)) {
           user.setEmail(value);
+          changes.set("email", value);
         } else {
           user.getAttributes().put(k, value);
+          changes.set("attributes." + k, value);
         }
       } catch(JSONException e) {
         log.warn("Unable to read profile value '{}'", k, e);
       }
     });
-    profile.keys();
 
-    save(user);
+    update(user, changes);
   }
 
   /**
@@ -519,13 +618,28 @@ public class UserService {
    * @return
    */
   public Set<String> getUserApplications(User user) {
-    Set<String> applications = Sets.newTreeSet();
-    if(user.hasApplications()) applications.addAll(user.getApplications());
-    if(user.hasGroups()) user.getGroups().forEach(g -> Optional.ofNullable(findGroup(g)).flatMap(r -> {
-      r.getApplications().forEach(applications::add);
-      return Optional.of(r);
-    }));
-    return applications;
+    return groupApplicationsIndex.getEffectiveApplications(user);
+  }
+
+  /**
+   * Check if the user has access to the application: explicitly defined or inherited from the groups.
+   *
+   * @param user
+   * @param application
+   * @return
+   */
+  public boolean hasApplication(User user, String application) {
+    return groupApplicationsIndex.hasApplication(user, application);
+  }
+
+  /**
+   * Get the applications granted by the group.
+   *
+   * @param group group name
+   * @return empty if group is not found
+   */
+  public Set<String> getGroupApplications(String group) {
+    return groupApplicationsIndex.getApplications(group);
   }
 
   //
@@ -541,6 +655,26 @@ public class UserService {
     return groupRepository.findAll();
   }
 
+  /**
+   * Get a page of {@link org.obiba.agate.domain.Group}s in ID order.
+   *
+   * @param after ID of the last group of the previous page, first page if null or empty
+   * @param limit
+   * @return
+   */
+  public List<Group> findGroups(@Nullable String after, int limit) {
+    return documentCursors.page(new Query(), after, limit, Group.class);
+  }
+
+  /**
+   * Stream all the {@link org.obiba.agate.domain.Group}s, the stream must be closed once consumed.
+   *
+   * @return
+   */
+  public Stream<Group> streamGroups() {
+    return documentCursors.stream(new Query(), Group.class);
+  }
+
   /**
    * Find a {@link org.obiba.agate.domain.Group} by its name.
    *
@@ -577,22 +711,77 @@ public class UserService {
       group.setNameAsId();
     }
     groupRepository.save(group);
+    groupApplicationsIndex.update(group);
     return group;
   }
 
   /**
    * Delete a {@link org.obiba.agate.domain.Group}.
    *
-   * @param user
+   * @param group
    */
   public void delete(@NotNull Group group) {
-    for(User user : userRepository.findAll()) {
-      if(user.getGroups().contains(group.getName())) {
-        throw NotOrphanGroupException.withName(group.getName());
-      }
-    }
+    if(userRepository.existsByGroup(group.getName())) throw NotOrphanGroupException.withName(group.getName());
 
     groupRepository.delete(group);
+    groupApplicationsIndex.remove(group);
+  }
+
+  /**
+   * Delete the {@link org.obiba.agate.domain.Group}s with the given names. None is deleted if any of them has users.
+   *
+   * @param names
+   */
+  public void deleteGroups(@NotNull Collection<String> names) {
+    Set<String> groupsInUse = userRepository.findGroupsInUse(names);
+    if(!groupsInUse.isEmpty()) throw NotOrphanGroupException.withNames(groupsInUse);
+
+    List<Group> groups = groupRepository.findByNameIn(names);
+    groupRepository.delete(groups);
+    groups.forEach(groupApplicationsIndex::remove);
+  }
+
+  /**
+   * Rename {@link org.obiba.agate.domain.Group}s and update the groups of their users.
+   *
+   * @param names new name by current name
+   */
+  public void renameGroups(@NotNull Map<String, String> names) {
+    List<Group> existing = groupRepository.findByNameIn(names.values());
+    if(!existing.isEmpty()) throw new BadRequestException("Group already exists: " + existing.get(0).getName());
+
+    Set<String> groupsInUse = userRepository.findGroupsInUse(names.keySet());
+    for(Group group : groupRepository.findByNameIn(names.keySet())) {
+      Group renamed = new Group(names.get(group.getName()), group.getDescription());
+      renamed.setApplications(group.getApplications());
+      save(renamed);
+      if(groupsInUse.contains(group.getName())) userRepository.renameGroup(group.getName(), renamed.getName());
+      groupRepository.delete(group);
+      groupApplicationsIndex.remove(group);
+    }
+  }
+
+  //
+  // Private methods
+  //
+
+  /**
+   * Apply the changes to the user if it is already persisted, otherwise save it in full.
+   *
+   * @param user
+   * @param changes
+   */
+  private void update(User user, Update changes) {
+    if(user.isNew()) save(user);
+    else updateFields(user.getId(), changes);
+  }
+
+  private boolean isValidAttributeName(String name) {
+    return !Strings.isNullOrEmpty(name) && !name.contains(".") && !name.contains("$");
+  }
+
+  private Query usersQuery(@Nullable UserStatus status) {
+    return status == null ? new Query() : Query.query(Criteria.where("status").is(status));
   }
 
 }
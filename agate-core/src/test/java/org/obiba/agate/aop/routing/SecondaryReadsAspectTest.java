@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.aop.routing;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.obiba.agate.domain.User;
+import org.obiba.agate.domain.UserStatus;
+import org.obiba.agate.repository.RoutingMongoTemplate;
+import org.obiba.agate.repository.UserRepository;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SecondaryReadsAspectTest {
+
+  private UserRepository userRepository;
+
+  private final AtomicBoolean readFromSecondary = new AtomicBoolean();
+
+  @Before
+  public void setUp() {
+    UserRepository target = mock(UserRepository.class);
+    when(target.findByNameAndStatus(anyString(), any(UserStatus.class))).thenAnswer(invocation -> {
+      readFromSecondary.set(RoutingMongoTemplate.isReadingFromSecondary());
+      return Collections.emptyList();
+    });
+
+    AspectJProxyFactory factory = new AspectJProxyFactory(target);
+    factory.addAspect(new SecondaryReadsAspect(Collections.singletonList("UserRepository.findByNameAndStatus"), 10000));
+    userRepository = factory.getProxy();
+  }
+
+  @Test
+  public void test_finder_reads_from_secondary() {
+    userRepository.findByNameAndStatus("foo", UserStatus.ACTIVE);
+
+    assertTrue(readFromSecondary.get());
+    assertFalse(RoutingMongoTemplate.isReadingFromSecondary());
+  }
+
+  @Test
+  public void test_saved_user_is_found_by_name_on_primary() {
+    User user = User.newBuilder().name("foo").email("foo@example.org").build();
+    userRepository.save(user);
+
+    userRepository.findByNameAndStatus("foo", UserStatus.ACTIVE);
+
+    assertFalse(readFromSecondary.get());
+  }
+
+}
@@ -0,0 +1,77 @@
+package org.obiba.agate.repository;
+
+import java.io.IOException;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import com.mongodb.Mongo;
+
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.tests.MongodForTestsFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners(DependencyInjectionTestExecutionListener.class)
+@ContextConfiguration(classes = RepositoryIndexesTest.Config.class)
+public class RepositoryIndexesTest {
+
+  @Inject
+  private RepositoryIndexes repositoryIndexes;
+
+  @Inject
+  private ApplicationContext applicationContext;
+
+  @Test
+  public void test_all_repositories_are_verified() {
+    Set<Class<?>> repositories = repositoryIndexes.getRepositoryInterfaces(applicationContext);
+
+    assertThat(repositories).contains(UserRepository.class, TicketRepository.class, AuthorizationRepository.class,
+      GroupRepository.class, ApplicationRepository.class);
+  }
+
+  @Test
+  public void test_all_finders_are_index_backed() {
+    assertThat(repositoryIndexes.verify(repositoryIndexes.getRepositoryInterfaces(applicationContext))).isEmpty();
+  }
+
+  @Configuration
+  @EnableMongoRepositories("org.obiba.agate.repository")
+  static class Config extends AbstractMongoConfiguration {
+
+    @Bean
+    public RepositoryIndexes repositoryIndexes() {
+      return new RepositoryIndexes();
+    }
+
+    @Override
+    protected String getDatabaseName() {
+      return "agate-test";
+    }
+
+    @Override
+    public Mongo mongo() throws IOException {
+      return MongodForTestsFactory.with(Version.Main.PRODUCTION).newMongo();
+    }
+
+    @Override
+    protected String getMappingBasePackage() {
+      return "org.obiba.agate.domain";
+    }
+
+  }
+
+}
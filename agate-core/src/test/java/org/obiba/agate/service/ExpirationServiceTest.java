@@ -0,0 +1,220 @@
+package org.obiba.agate.service;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.obiba.agate.domain.Authorization;
+import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.event.AgateConfigUpdatedEvent;
+import org.obiba.agate.repository.AuthorizationRepository;
+import org.obiba.agate.repository.TicketRepository;
+import org.springframework.cache.ehcache.EhCacheManagerFactoryBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import com.mongodb.Mongo;
+
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.tests.MongodForTestsFactory;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners(DependencyInjectionTestExecutionListener.class)
+@ContextConfiguration(classes = ExpirationServiceTest.Config.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ExpirationServiceTest {
+
+  private static final String SECRET_KEY = "test-secret";
+
+  @Inject
+  private ExpirationService expirationService;
+
+  @Inject
+  private TicketRepository ticketRepository;
+
+  @Inject
+  private AuthorizationRepository authorizationRepository;
+
+  @Inject
+  private MongoTemplate mongoTemplate;
+
+  @Inject
+  private TokenCache tokenCache;
+
+  @Before
+  public void clearDatabase() {
+    mongoTemplate.getDb().dropDatabase();
+  }
+
+  @Test
+  public void test_remove_expired_tickets() {
+    Ticket expired = newTicket(false, DateTime.now().minusHours(10));
+    Ticket remembered = newTicket(true, DateTime.now().minusHours(10));
+    Ticket expiredRemembered = newTicket(true, DateTime.now().minusHours(30));
+    Ticket recent = newTicket(false, DateTime.now());
+
+    expirationService.removeExpired();
+
+    assertThat(ticketRepository.findOne(expired.getId())).isNull();
+    assertThat(ticketRepository.findOne(remembered.getId())).isNotNull();
+    assertThat(ticketRepository.findOne(expiredRemembered.getId())).isNull();
+    assertThat(ticketRepository.findOne(recent.getId())).isNotNull();
+  }
+
+  @Test
+  public void test_remove_expired_authorizations_with_their_tickets() {
+    Authorization expired = newAuthorization(DateTime.now().minusHours(30));
+    Authorization recent = newAuthorization(DateTime.now());
+    Ticket expiredTicket = newTicket(false, DateTime.now());
+    expiredTicket.setAuthorization(expired.getId());
+    ticketRepository.save(expiredTicket);
+    Ticket recentTicket = newTicket(false, DateTime.now());
+    recentTicket.setAuthorization(recent.getId());
+    ticketRepository.save(recentTicket);
+
+    expirationService.removeExpired();
+
+    assertThat(authorizationRepository.findOne(expired.getId())).isNull();
+    assertThat(authorizationRepository.findOne(recent.getId())).isNotNull();
+    assertThat(ticketRepository.findOne(expiredTicket.getId())).isNull();
+    assertThat(ticketRepository.findOne(recentTicket.getId())).isNotNull();
+  }
+
+  @Test
+  public void test_removed_tickets_tokens_are_evicted() {
+    Ticket expired = newTicket(false, DateTime.now().minusHours(10));
+    Authorization expiredAuthorization = newAuthorization(DateTime.now().minusHours(30));
+    Ticket authorized = newTicket(false, DateTime.now());
+    authorized.setAuthorization(expiredAuthorization.getId());
+    ticketRepository.save(authorized);
+    String expiredToken = newToken(expired);
+    String authorizedToken = newToken(authorized);
+    tokenCache.verify(expiredToken).setTicketFound(expired);
+    tokenCache.verify(authorizedToken).setTicketFound(authorized);
+
+    expirationService.removeExpired();
+
+    assertThat(tokenCache.verify(expiredToken).isTicketFound()).isFalse();
+    assertThat(tokenCache.verify(authorizedToken).isTicketFound()).isFalse();
+  }
+
+  @Test
+  public void test_config_update_keeps_expiration_dates() {
+    Ticket ticket = newTicket(false, DateTime.now());
+    ticket.setExpiresAt(DateTime.now().plusHours(8));
+    ticketRepository.save(ticket);
+    expirationService.removeExpired();
+
+    expirationService.onConfigUpdated(new AgateConfigUpdatedEvent(newConfiguration(8, 24)));
+    expirationService.onConfigUpdated(new AgateConfigUpdatedEvent(newConfiguration(12, 48)));
+
+    assertThat(ticketRepository.findOne(ticket.getId()).getExpiresAt()).isNotNull();
+  }
+
+  @Test
+  public void test_config_update_with_shorter_timeout_removes_expired_tickets() {
+    Ticket expired = newTicket(false, DateTime.now().minusHours(5));
+    Ticket recent = newTicket(false, DateTime.now().minusHours(3));
+
+    expirationService.onConfigUpdated(new AgateConfigUpdatedEvent(newConfiguration(4, 24)));
+
+    assertThat(ticketRepository.findOne(expired.getId())).isNull();
+    assertThat(ticketRepository.findOne(recent.getId())).isNotNull();
+  }
+
+  private String newToken(Ticket ticket) {
+    return Jwts.builder().setId(ticket.getId()).setSubject(ticket.getUsername())
+      .setExpiration(DateTime.now().plusHours(1).toDate()).signWith(SignatureAlgorithm.HS256, SECRET_KEY.getBytes())
+      .compact();
+  }
+
+  private org.obiba.agate.domain.Configuration newConfiguration(int shortTimeout, int longTimeout) {
+    org.obiba.agate.domain.Configuration configuration = new org.obiba.agate.domain.Configuration();
+    configuration.setShortTimeout(shortTimeout);
+    configuration.setLongTimeout(longTimeout);
+    return configuration;
+  }
+
+  private Ticket newTicket(boolean remembered, DateTime created) {
+    Ticket ticket = new Ticket();
+    ticket.setUsername("pwel");
+    ticket.setRemembered(remembered);
+    ticket.setCreatedDate(created);
+    return ticketRepository.save(ticket);
+  }
+
+  private Authorization newAuthorization(DateTime created) {
+    Authorization authorization = new Authorization("pwel", "app");
+    authorization.setCode(created.toString());
+    authorization.setCreatedDate(created);
+    return authorizationRepository.save(authorization);
+  }
+
+  @Configuration
+  @EnableMongoRepositories("org.obiba.agate.repository")
+  static class Config extends AbstractMongoConfiguration {
+
+    @Bean
+    public ExpirationService expirationService() {
+      return new ExpirationService();
+    }
+
+    @Bean
+    public TokenCache tokenCache() {
+      return new TokenCache();
+    }
+
+    @Bean
+    public EhCacheManagerFactoryBean cacheManagerFactory() {
+      EhCacheManagerFactoryBean factoryBean = new EhCacheManagerFactoryBean();
+      factoryBean.setCacheManagerName("agate-expiration-test");
+      return factoryBean;
+    }
+
+    @Bean
+    public ConfigurationService configurationService() {
+      org.obiba.agate.domain.Configuration configuration = new org.obiba.agate.domain.Configuration();
+      configuration.setShortTimeout(8);
+      configuration.setLongTimeout(24);
+      configuration.setSecretKey(SECRET_KEY);
+      ConfigurationService configurationService = mock(ConfigurationService.class);
+      when(configurationService.getConfiguration()).thenReturn(configuration);
+      return configurationService;
+    }
+
+    @Override
+    protected String getDatabaseName() {
+      return "agate-test";
+    }
+
+    @Override
+    public Mongo mongo() throws IOException {
+      return MongodForTestsFactory.with(Version.Main.PRODUCTION).newMongo();
+    }
+
+    @Override
+    protected String getMappingBasePackage() {
+      return "org.obiba.agate.domain";
+    }
+
+  }
+
+}
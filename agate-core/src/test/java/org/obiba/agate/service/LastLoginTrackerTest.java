@@ -0,0 +1,61 @@
+package org.obiba.agate.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.obiba.agate.domain.User;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DBCollection;
+import com.mongodb.MongoException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LastLoginTrackerTest {
+
+  @InjectMocks
+  private LastLoginTracker lastLoginTracker;
+
+  @Mock
+  private MongoTemplate mongoTemplate;
+
+  @Mock
+  private DBCollection collection;
+
+  @Mock
+  private BulkWriteOperation bulk;
+
+  @Mock
+  private BulkWriteRequestBuilder request;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(mongoTemplate.getCollectionName(User.class)).thenReturn("user");
+    when(mongoTemplate.getCollection("user")).thenReturn(collection);
+    when(collection.initializeUnorderedBulkOperation()).thenReturn(bulk);
+    when(bulk.find(any(BasicDBObject.class))).thenReturn(request);
+  }
+
+  @Test
+  public void testFailedLastLoginsAreRetried() {
+    when(bulk.execute()).thenThrow(new MongoException("not master")).thenReturn(null);
+    lastLoginTracker.record("foo");
+
+    lastLoginTracker.flush();
+    lastLoginTracker.flush();
+    lastLoginTracker.flush();
+
+    verify(bulk, times(2)).find(new BasicDBObject("name", "foo"));
+    verify(bulk, times(2)).execute();
+  }
+
+}
@@ -0,0 +1,101 @@
+package org.obiba.agate.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MailDispatcherTest {
+
+  @InjectMocks
+  private MailDispatcher mailDispatcher;
+
+  @Mock
+  private Environment environment;
+
+  @Mock
+  private MailService mailService;
+
+  @Mock
+  private JavaMailSenderImpl javaMailSender;
+
+  @Spy
+  private Executor senders = new SyncTaskExecutor();
+
+  @Before
+  public void init() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(mailService.createMimeMessage(anyString(), anyString(), anyString())).thenReturn(mock(MimeMessage.class));
+    mailDispatcher.init();
+  }
+
+  @Test
+  public void testMailsAreSentInBatches() throws Exception {
+    MailDispatcher.Job job = mailDispatcher.submit("app", mails(120));
+    for(int i = 0; i < 100 && !job.isDone(); i++) Thread.sleep(100);
+
+    assertTrue(job.isDone());
+    assertEquals(120, job.getSent());
+    assertEquals(0, job.getFailed());
+    verify(javaMailSender, times(3)).send(any(MimeMessage[].class));
+    assertEquals(job, mailDispatcher.getJob(job.getId()));
+  }
+
+  @Test
+  public void testMailsStreamIsClosedOnceDrained() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+
+    MailDispatcher.Job job = mailDispatcher.submit("app", mails(10).onClose(() -> closed.set(true)));
+
+    assertTrue(job.isDone());
+    assertEquals(10, job.getTotal());
+    assertTrue(closed.get());
+  }
+
+  @Test
+  public void testRejectedJobIsNotStarted() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    doThrow(new RejectedExecutionException()).when(senders).execute(any(Runnable.class));
+
+    try {
+      mailDispatcher.submit("app", mails(10).onClose(() -> closed.set(true)));
+      fail("Expected MailQueueFullException");
+    } catch(MailQueueFullException e) {
+      assertNull(mailDispatcher.getJob(e.getJobId()));
+    }
+
+    assertTrue(closed.get());
+    verify(javaMailSender, never()).send(any(MimeMessage[].class));
+  }
+
+  private Stream<MailDispatcher.Mail> mails(int count) {
+    return IntStream.range(0, count)
+      .mapToObj(i -> new MailDispatcher.Mail("user" + i + "@example.org", "subject", "body"));
+  }
+}
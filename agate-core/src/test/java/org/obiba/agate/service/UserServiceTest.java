@@ -1,5 +1,12 @@
 package org.obiba.agate.service;
 
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.BadRequestException;
+
+import org.joda.time.DateTime;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -7,24 +14,34 @@ import org.junit.rules.ExpectedException;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.obiba.agate.domain.Configuration;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.domain.UserStatus;
 import org.obiba.agate.event.UserApprovedEvent;
 import org.obiba.agate.event.UserJoinedEvent;
+import org.obiba.agate.event.UsersDeactivatedEvent;
 import org.obiba.agate.repository.UserCredentialsRepository;
 import org.obiba.agate.repository.UserRepository;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.matches;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.springframework.core.env.Environment;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.query.Update;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 
 public class UserServiceTest {
@@ -47,6 +64,12 @@ public class UserServiceTest {
   @Mock
   private ConfigurationService configurationService;
 
+  @Mock
+  private LastLoginTracker lastLoginTracker;
+
+  @Spy
+  private MetricRegistry metricRegistry = new MetricRegistry();
+
   @Rule
   public ExpectedException exception = ExpectedException.none();
 
@@ -82,4 +105,76 @@ public class UserServiceTest {
     userService.createUser(user);
     verify(eventBus).post(any(UserApprovedEvent.class));
   }
+
+  @Test
+  public void testUpdateStatusIsPartialUpdate() {
+    User user = User.newBuilder().name("toto").pending().build();
+    user.setNameAsId();
+    when(userRepository.updateFields(anyString(), any(Update.class))).thenReturn(true);
+    userService.updateUserStatus(user, UserStatus.ACTIVE);
+    verify(userRepository).updateFields(eq("toto"), any(Update.class));
+    verify(userRepository, never()).save(any(User.class));
+  }
+
+  @Test
+  public void testUpdateFieldsWithAssignedEmail() {
+    when(userRepository.updateFields(anyString(), any(Update.class))).thenThrow(new DuplicateKeyException("email"));
+    exception.expect(EmailAlreadyAssignedException.class);
+    userService.updateFields("toto", new Update().set("email", "toto@example.org"));
+  }
+
+  @Test
+  public void testUpdateProfileRejectsNestedAttributeName() throws Exception {
+    User user = User.newBuilder().name("toto").active().build();
+    user.setNameAsId();
+    exception.expect(BadRequestException.class);
+    try {
+      userService.updateUserProfile(user, new JSONObject().put("firstname", "Toto").put("a.b", "c"));
+    } finally {
+      verify(userRepository, never()).updateFields(anyString(), any(Update.class));
+      assertTrue(!user.getAttributes().containsKey("a.b"));
+    }
+  }
+
+  @Test
+  public void testUpdateProfileRejectsOperatorAttributeName() throws Exception {
+    User user = User.newBuilder().name("toto").active().build();
+    user.setNameAsId();
+    exception.expect(BadRequestException.class);
+    try {
+      userService.updateUserProfile(user, new JSONObject().put("$set", "c"));
+    } finally {
+      verify(userRepository, never()).updateFields(anyString(), any(Update.class));
+    }
+  }
+
+  @Test
+  public void testUpdateProfileIsPartialUpdate() throws Exception {
+    User user = User.newBuilder().name("toto").active().build();
+    user.setNameAsId();
+    when(userRepository.updateFields(anyString(), any(Update.class))).thenReturn(true);
+    userService.updateUserProfile(user, new JSONObject().put("firstname", "Toto").put("institution", "OBiBa"));
+    verify(userRepository).updateFields(eq("toto"), any(Update.class));
+    assertEquals("OBiBa", user.getAttributes().get("institution"));
+  }
+
+  @Test
+  public void testRemoveInactiveUsersByBatches() {
+    List<User> batch = Lists.newArrayList();
+    for(int i = 0; i < 1000; i++) {
+      User user = User.newBuilder().name("user" + i).build();
+      user.setNameAsId();
+      batch.add(user);
+    }
+    User last = User.newBuilder().name("last").build();
+    when(userRepository.updateStatusByRoleAndLastLoginLessThan(eq("agate-user"), any(DateTime.class),
+      eq(UserStatus.INACTIVE), eq(1000))).thenReturn(batch, Collections.singletonList(last));
+
+    userService.removeInactiveUsers();
+
+    verify(lastLoginTracker).flush();
+    verify(eventBus, times(2)).post(any(UsersDeactivatedEvent.class));
+    assertEquals(1001, metricRegistry.histogram(MetricRegistry.name(UserService.class, "inactive", "count"))
+      .getSnapshot().getMax());
+  }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.web.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.protobuf.Message;
+import com.googlecode.protobuf.format.JsonFormat;
+
+/**
+ * Write a stream of DTOs as a JSON array, each DTO being serialized as soon as it is read from the database, so that
+ * the whole list is never held in memory. The stream is closed once written.
+ *
+ * @param <T>
+ */
+public class JsonStreamingOutput<T extends Message> implements StreamingOutput {
+
+  private static final int FLUSH_SIZE = 100;
+
+  private final Stream<T> dtos;
+
+  public JsonStreamingOutput(Stream<T> dtos) {
+    this.dtos = dtos;
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    try(Stream<T> stream = dtos) {
+      Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+      writer.write('[');
+      int count = 0;
+      for(Iterator<T> it = stream.iterator(); it.hasNext(); ) {
+        if(count > 0) writer.write(',');
+        JsonFormat.print(it.next(), writer);
+        // send chunks to the client while reading
+        if(++count % FLUSH_SIZE == 0) writer.flush();
+      }
+      writer.write(']');
+      writer.flush();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2016 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.agate.web.rest;
+
+import javax.ws.rs.BadRequestException;
+
+import org.obiba.agate.repository.DocumentCursors;
+
+/**
+ * Validation of the page size requested to the listing endpoints.
+ */
+public final class PageLimits {
+
+  private PageLimits() {}
+
+  /**
+   * Check that the page size is between 1 and {@link DocumentCursors#MAX_PAGE_SIZE}.
+   *
+   * @param limit
+   * @return
+   * @throws BadRequestException
+   */
+  public static int check(int limit) {
+    if(limit < 1 || limit > DocumentCursors.MAX_PAGE_SIZE) {
+      throw new BadRequestException("Limit must be between 1 and " + DocumentCursors.MAX_PAGE_SIZE + ": " + limit);
+    }
+    return limit;
+  }
+
+}
@@ -10,29 +10,27 @@
 
 package org.obiba.agate.web.rest.application;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.obiba.agate.domain.Application;
-import org.obiba.agate.domain.User;
 import org.obiba.agate.service.ApplicationService;
 import org.obiba.agate.service.UserService;
 import org.obiba.agate.web.model.Dtos;
+import org.obiba.agate.web.rest.JsonStreamingOutput;
 import org.obiba.shiro.realm.ObibaRealm;
 import org.obiba.web.model.AuthDtos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import com.google.common.base.Strings;
-
 @Component
 @Path("/application/{id}/users")
 public class ApplicationUsersResource extends ApplicationAwareResource {
@@ -47,16 +45,22 @@ public class ApplicationUsersResource extends ApplicationAwareResource {
   @Inject
   protected UserService userService;
 
+  /**
+   * Stream the active users of the application, each user being written as soon as it is read from the database.
+   *
+   * @param id
+   * @param authHeader
+   * @param group
+   * @return
+   */
   @GET
-  public List<AuthDtos.SubjectDto> get(@PathParam("id") String id,
-    @HeaderParam(ObibaRealm.APPLICATION_AUTH_HEADER) String authHeader, @QueryParam("group") String group) {
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response get(@PathParam("id") String id, @HeaderParam(ObibaRealm.APPLICATION_AUTH_HEADER) String authHeader,
+    @QueryParam("group") String group) {
     validateApplication(authHeader);
     Application application = applicationService.getApplication(id);
-    List<User> users = Strings.isNullOrEmpty(group)
-      ? userService.findActiveUsersByApplication(application.getName())
-      : userService.findActiveUsersByApplicationAndGroup(application.getName(), group);
-
-
-    return users.stream().map(u -> dtos.asDto(u, true)).collect(Collectors.toList());
+    return Response.ok(new JsonStreamingOutput<AuthDtos.SubjectDto>(
+      userService.findActiveUsersByApplicationAndGroup(application.getName(), group).map(u -> dtos.asDto(u, true))))
+      .build();
   }
 }
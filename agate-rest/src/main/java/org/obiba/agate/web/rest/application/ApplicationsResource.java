@@ -11,12 +11,16 @@
 package org.obiba.agate.web.rest.application;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.shiro.authz.annotation.RequiresRoles;
@@ -24,6 +28,8 @@ import org.obiba.agate.domain.Application;
 import org.obiba.agate.service.ApplicationService;
 import org.obiba.agate.web.model.Agate;
 import org.obiba.agate.web.model.Dtos;
+import org.obiba.agate.web.rest.JsonStreamingOutput;
+import org.obiba.agate.web.rest.PageLimits;
 import org.springframework.stereotype.Component;
 import com.google.common.collect.ImmutableList;
 
@@ -39,7 +45,11 @@ public class ApplicationsResource {
   private Dtos dtos;
 
   @GET
-  public List<Agate.ApplicationDto> get() {
+  public List<Agate.ApplicationDto> get(@QueryParam("after") String after, @QueryParam("limit") Integer limit) {
+    if(limit != null) {
+      return applicationService.findAll(after, PageLimits.check(limit)).stream().map(dtos::asDto).collect(Collectors.toList());
+    }
+
     ImmutableList.Builder<Agate.ApplicationDto> builder = ImmutableList.builder();
 
     for(Application application : applicationService.findAll()) {
@@ -49,6 +59,13 @@ public class ApplicationsResource {
     return builder.build();
   }
 
+  @GET
+  @Path("/_stream")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response stream() {
+    return Response.ok(new JsonStreamingOutput<>(applicationService.streamAll().map(dtos::asDto))).build();
+  }
+
   @POST
   public Response create(Agate.ApplicationDto dto) {
     if (applicationService.findByName(dto.getName()) != null) {
@@ -10,7 +10,10 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
@@ -51,27 +54,29 @@ public class ConfigurationResource {
   /**
    * Get the Json representation of the form to be filled for submitting a join request.
    *
-   * @return
+   * @param request
+   * @return not modified if the client's copy has the same entity tag
    */
   @GET
   @Path("/join")
   @Produces(APPLICATION_JSON)
   @Timed
-  public Response getJoinConfiguration() throws JSONException, IOException {
-    return Response.ok(configurationService.getJoinConfiguration().toString()).build();
+  public Response getJoinConfiguration(@Context Request request) throws JSONException, IOException {
+    return getForm(request, configurationService.getJoinForm());
   }
 
   /**
    * Get the Json representation of the form to be filled for updating a user profile.
    *
-   * @return
+   * @param request
+   * @return not modified if the client's copy has the same entity tag
    */
   @GET
   @Path("/profile")
   @Produces(APPLICATION_JSON)
   @Timed
-  public Response getProfileConfiguration() throws JSONException, IOException {
-    return Response.ok(configurationService.getProfileConfiguration().toString()).build();
+  public Response getProfileConfiguration(@Context Request request) throws JSONException, IOException {
+    return getForm(request, configurationService.getProfileForm());
   }
 
   @GET
@@ -121,6 +126,13 @@ public class ConfigurationResource {
     return Response.status(Response.Status.NOT_FOUND).build();
   }
 
+  private Response getForm(Request request, ConfigurationService.RenderedForm form) {
+    EntityTag etag = new EntityTag(form.getEtag());
+    Response.ResponseBuilder builder = request.evaluatePreconditions(etag);
+    if(builder == null) builder = Response.ok(form.getContent()).tag(etag);
+    return builder.build();
+  }
+
   private void doImportCertificate(String name, String alias, Agate.KeyForm keyForm) {
     keyStoreService.createOrUpdateCertificate(name, alias, keyForm.getPublicImport());
   }
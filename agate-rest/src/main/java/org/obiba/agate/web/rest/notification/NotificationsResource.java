@@ -13,21 +13,28 @@ package org.obiba.agate.web.rest.notification;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.FormParam;
+import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.service.ConfigurationService;
-import org.obiba.agate.service.MailService;
+import org.obiba.agate.service.MailDispatcher;
+import org.obiba.agate.service.NotificationRenderer;
 import org.obiba.agate.service.UserService;
 import org.obiba.agate.web.rest.application.ApplicationAwareResource;
 import org.obiba.shiro.realm.ObibaRealm;
@@ -35,10 +42,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
-import org.thymeleaf.spring4.SpringTemplateEngine;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
 @Component
 @Path("/notifications")
@@ -48,10 +56,10 @@ public class NotificationsResource extends ApplicationAwareResource {
   private static final Logger log = LoggerFactory.getLogger(NotificationsResource.class);
 
   @Inject
-  private MailService mailService;
+  private MailDispatcher mailDispatcher;
 
   @Inject
-  private SpringTemplateEngine templateEngine;
+  private NotificationRenderer notificationRenderer;
 
   @Inject
   private ConfigurationService configurationService;
@@ -71,31 +79,52 @@ public class NotificationsResource extends ApplicationAwareResource {
    * @param body body of the message (optional)
    * @param template template name to be used if message body is not specified
    * @param authHeader
-   * @return
+   * @return the progress of the sending job, see {@link #getJob(String, String)}
+   * @throws JSONException
    */
   @POST
+  @Produces(APPLICATION_JSON)
   public Response notify(@Context HttpServletRequest servletRequest, @FormParam("username") List<String> usernames,
     @FormParam("group") List<String> groups, @FormParam("subject") String subject, @FormParam("body") String body,
-    @FormParam("template") String template, @HeaderParam(ObibaRealm.APPLICATION_AUTH_HEADER) String authHeader) {
+    @FormParam("template") String template, @HeaderParam(ObibaRealm.APPLICATION_AUTH_HEADER) String authHeader) throws JSONException {
     if(Strings.isNullOrEmpty(subject) && Strings.isNullOrEmpty(body)) return Response.noContent().build();
 
     validateApplication(authHeader);
 
-    Set<User> recipients = Sets.newHashSet();
-    if((usernames == null || usernames.isEmpty()) && (groups == null || groups.isEmpty())) {
-      // all users having access to the application
-      userService.findActiveUsersByApplication(getApplicationName()).forEach(recipients::add);
-    } else {
-      // all the specified users having access to the application
-      appendRecipientsFromUsernames(usernames, recipients);
-      // all the users belonging to one of the groups and having access to the application
-      appendRecipientsFromGroup(groups, recipients);
+    // recipients are read from the database while their mails are sent, in the background
+    Stream<User> recipients = findRecipients(usernames, groups);
+    MailDispatcher.Job job;
+    try {
+      job = Strings.isNullOrEmpty(template)
+        ? sendPlainEmail(subject, body, recipients)
+        : sendTemplateEmail(subject, template, servletRequest.getParameterMap(), recipients);
+    } catch(RuntimeException e) {
+      recipients.close();
+      throw e;
     }
 
-    if(Strings.isNullOrEmpty(template)) sendPlainEmail(subject, body, recipients);
-    else sendTemplateEmail(subject, template, servletRequest.getParameterMap(), recipients);
+    return Response.accepted(asJSON(job).toString()).build();
+  }
+
+  /**
+   * Get the progress of a notification sending job requested by the same application.
+   *
+   * @param id
+   * @param authHeader
+   * @return
+   * @throws JSONException
+   */
+  @GET
+  @Path("/job/{id}")
+  @Produces(APPLICATION_JSON)
+  public Response getJob(@PathParam("id") String id,
+    @HeaderParam(ObibaRealm.APPLICATION_AUTH_HEADER) String authHeader) throws JSONException {
+    validateApplication(authHeader);
+
+    MailDispatcher.Job job = mailDispatcher.getJob(id);
+    if(job == null || !job.getOwner().equals(getApplicationName())) throw new NotFoundException("No such job: " + id);
 
-    return Response.noContent().build();
+    return Response.ok(asJSON(job).toString()).build();
   }
 
   //
@@ -111,9 +140,10 @@ public class NotificationsResource extends ApplicationAwareResource {
    * @param templateName
    * @param context
    * @param recipients
+   * @return
    */
-  private void sendTemplateEmail(String subject, String templateName, Map<String, String[]> context,
-    Set<User> recipients) {
+  private MailDispatcher.Job sendTemplateEmail(String subject, String templateName, Map<String, String[]> context,
+    Stream<User> recipients) {
     org.thymeleaf.context.Context ctx = new org.thymeleaf.context.Context();
     context.forEach((k, v) -> {
       if(v != null && v.length == 1) {
@@ -122,13 +152,11 @@ public class NotificationsResource extends ApplicationAwareResource {
         ctx.setVariable(k, v);
       }
     });
-    String templateLocation = getApplicationName() + "/" + templateName;
+    Function<User, String> renderer = notificationRenderer.prepare(getApplicationName() + "/" + templateName, ctx);
 
-    recipients.forEach(rec -> {
-      ctx.setVariable("user", rec);
-      mailService
-        .sendEmail(rec.getEmail(), subject, templateEngine.process(templateLocation, ctx));
-    });
+    // each recipient is rendered only when its mail is about to be sent
+    return mailDispatcher.submit(getApplicationName(),
+      recipients.map(rec -> new MailDispatcher.Mail(rec.getEmail(), subject, renderer.apply(rec))));
   }
 
   /**
@@ -136,43 +164,63 @@ public class NotificationsResource extends ApplicationAwareResource {
    * @param subject
    * @param body
    * @param recipients
+   * @return
    */
-  private void sendPlainEmail(String subject, String body, Set<User> recipients) {
-    recipients.forEach(rec -> mailService.sendEmail(rec.getEmail(), subject, body));
+  private MailDispatcher.Job sendPlainEmail(String subject, String body, Stream<User> recipients) {
+    return mailDispatcher.submit(getApplicationName(),
+      recipients.map(rec -> new MailDispatcher.Mail(rec.getEmail(), subject, body)));
+  }
+
+  private JSONObject asJSON(MailDispatcher.Job job) throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("id", job.getId());
+    json.put("total", job.getTotal());
+    json.put("sent", job.getSent());
+    json.put("failed", job.getFailed());
+    json.put("done", job.isDone());
+    return json;
   }
 
   /**
-   * Lookup active users and verify its access to the application requesting the notification.
+   * Stream the active users having access to the application: the specified users and the users belonging to one of
+   * the groups, or all of them if no user names and no groups are specified. Each user is streamed once, the stream
+   * must be closed once consumed.
    *
-   * @param servletRequest
    * @param usernames
-   * @param emails
+   * @param groups
+   * @return
    */
-  private void appendRecipientsFromUsernames(Collection<String> usernames, Collection<User> recipients) {
-    if(usernames == null || usernames.isEmpty()) return;
+  private Stream<User> findRecipients(Collection<String> usernames, Collection<String> groups) {
+    boolean noUsernames = usernames == null || usernames.isEmpty();
+    boolean noGroups = groups == null || groups.isEmpty();
+    // all users having access to the application
+    if(noUsernames && noGroups) return userService.findActiveUsersByApplication(getApplicationName());
+
+    Map<String, User> users = findRecipientsFromUsernames(usernames);
+    if(noGroups) return users.values().stream();
+
+    // all the users belonging to one of the groups, not already found by their name
+    Stream<User> groupsUsers = userService.findActiveUsersByApplicationAndGroups(getApplicationName(), groups)
+      .filter(user -> !users.containsKey(user.getName()));
+    return Stream.concat(users.values().stream(), groupsUsers);
+  }
 
-    List<String> applicationUsernames = userService.findActiveUsersByApplication(getApplicationName()).stream()
-      .map(User::getName).collect(Collectors.toList());
+  /**
+   * Lookup active users and verify their access to the application requesting the notification.
+   *
+   * @param usernames
+   * @return the users by name
+   */
+  private Map<String, User> findRecipientsFromUsernames(Collection<String> usernames) {
+    Map<String, User> recipients = Maps.newLinkedHashMap();
+    if(usernames == null || usernames.isEmpty()) return recipients;
 
     usernames.forEach(username -> {
       User user = userService.findActiveUser(username);
       if(user == null) user = userService.findActiveUserByEmail(username);
 
-      if(user != null && applicationUsernames.contains(user.getName())) recipients.add(user);
+      if(user != null && userService.hasApplication(user, getApplicationName())) recipients.put(user.getName(), user);
     });
-  }
-
-  /**
-   * Lookup active users belonging to one the groups and verify its access to the application requesting the notification.
-   *
-   * @param groups
-   * @param emails
-   */
-  private void appendRecipientsFromGroup(Collection<String> groups, Collection<User> recipients) {
-    if(groups == null || groups.isEmpty()) return;
-
-    // find all users in each group and having access to the application
-    groups.forEach(
-      group -> userService.findActiveUsersByApplicationAndGroup(getApplicationName(), group).forEach(recipients::add));
+    return recipients;
   }
 }
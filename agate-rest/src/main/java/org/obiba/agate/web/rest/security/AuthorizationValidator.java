@@ -15,7 +15,6 @@ import javax.servlet.ServletRequest;
 import javax.ws.rs.ForbiddenException;
 
 import org.apache.shiro.subject.Subject;
-import org.obiba.agate.domain.Group;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.domain.UserStatus;
 import org.obiba.agate.service.ApplicationService;
@@ -77,10 +76,7 @@ public class AuthorizationValidator {
 
   public void validateApplication(ServletRequest servletRequest, User user, String appName) {
     // check application
-    if(!user.hasApplication(appName) && user.getGroups().stream().noneMatch(g -> {
-      Group group = userService.findGroup(g);
-      return group != null && group.hasApplication(appName);
-    })) {
+    if(!userService.hasApplication(user, appName)) {
       log.info("Application '{}' not allowed for user '{}' at ip: '{}'", appName, user.getName(),
         servletRequest.getRemoteAddr());
       throw new ForbiddenException();
@@ -10,16 +10,22 @@
 
 package org.obiba.agate.web.rest.ticket;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.NewCookie;
@@ -34,6 +40,7 @@ import org.obiba.agate.domain.Ticket;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.service.NoSuchUserException;
 import org.obiba.agate.service.TicketService;
+import org.obiba.agate.service.TokenCache;
 import org.obiba.agate.service.TokenUtils;
 import org.obiba.agate.service.UserService;
 import org.obiba.agate.web.model.Agate;
@@ -57,6 +64,8 @@ public class TicketResource extends ApplicationAwareResource {
 
   private static final Logger log = LoggerFactory.getLogger(TicketResource.class);
 
+  private static final int MAX_EVENTS_PAGE_SIZE = 500;
+
   @Inject
   private TicketService ticketService;
 
@@ -73,10 +82,33 @@ public class TicketResource extends ApplicationAwareResource {
     return dtos.asDto(ticketService.getTicket(idOrToken));
   }
 
+  /**
+   * Get a page of the archived events of the ticket, most recent first. The ticket itself only embeds its most recent
+   * events.
+   *
+   * @param idOrToken
+   * @param page
+   * @param size at most {@link #MAX_EVENTS_PAGE_SIZE}
+   * @return
+   */
+  @GET
+  @Path("/{idOrToken}/events")
+  @RequiresRoles("agate-administrator")
+  public List<Agate.TicketDto.Event> getEvents(@PathParam("idOrToken") String idOrToken,
+    @QueryParam("page") @DefaultValue("0") int page, @QueryParam("size") @DefaultValue("50") int size) {
+    if(page < 0) throw new BadRequestException("Page cannot be negative: " + page);
+    if(size < 1 || size > MAX_EVENTS_PAGE_SIZE) {
+      throw new BadRequestException("Page size must be between 1 and " + MAX_EVENTS_PAGE_SIZE + ": " + size);
+    }
+    Ticket ticket = ticketService.getTicket(idOrToken);
+    return ticketService.findEvents(ticket.getId(), page, size).getContent().stream().map(dtos::asDto)
+      .collect(Collectors.toList());
+  }
+
   /**
    * Get the user profile as a angular schema form model. See also
-   * {@link org.obiba.agate.web.rest.config.ConfigurationResource#getProfileConfiguration()}. The user profile is
-   * only accessible to authenticated applications to which the user has access.
+   * {@link org.obiba.agate.web.rest.config.ConfigurationResource#getProfileConfiguration(javax.ws.rs.core.Request)}.
+   * The user profile is only accessible to authenticated applications to which the user has access.
    *
    * @return
    * @throws JSONException
@@ -89,13 +121,12 @@ public class TicketResource extends ApplicationAwareResource {
     validateApplication(authHeader);
     tokenUtils.validateAccessToken(token, getApplicationName());
 
-    Ticket ticket = ticketService.getTicket(token);
-    ticket.addEvent(getApplicationName(), "profile");
-    ticketService.save(ticket);
+    TokenCache.VerifiedToken verified = ticketService.verifyToken(token);
+    ticketService.addEvent(verified.getTicketId(), getApplicationName(), "profile");
 
-    User user = userService.findActiveUser(ticket.getUsername());
-    if(user == null) user = userService.findActiveUserByEmail(ticket.getUsername());
-    if (user == null) throw NoSuchUserException.withName(ticket.getUsername());
+    User user = userService.findActiveUser(verified.getUsername());
+    if(user == null) user = userService.findActiveUserByEmail(verified.getUsername());
+    if (user == null) throw NoSuchUserException.withName(verified.getUsername());
 
     authorizationValidator.validateApplication(servletRequest, user, getApplicationName());
 
@@ -104,8 +135,8 @@ public class TicketResource extends ApplicationAwareResource {
 
   /**
    * Update the user profile from a angular schema form model. See also
-   * {@link org.obiba.agate.web.rest.config.ConfigurationResource#getProfileConfiguration()}.The user profile is
-   * only accessible to authenticated applications to which the user has access.
+   * {@link org.obiba.agate.web.rest.config.ConfigurationResource#getProfileConfiguration(javax.ws.rs.core.Request)}.
+   * The user profile is only accessible to authenticated applications to which the user has access.
    *
    * @return
    * @throws JSONException
@@ -118,13 +149,12 @@ public class TicketResource extends ApplicationAwareResource {
     validateApplication(authHeader);
     tokenUtils.validateAccessToken(token, getApplicationName());
 
-    Ticket ticket = ticketService.getTicket(token);
-    ticket.addEvent(getApplicationName(), "profile");
-    ticketService.save(ticket);
+    TokenCache.VerifiedToken verified = ticketService.verifyToken(token);
+    ticketService.addEvent(verified.getTicketId(), getApplicationName(), "profile");
 
-    User user = userService.findActiveUser(ticket.getUsername());
-    if(user == null) user = userService.findActiveUserByEmail(ticket.getUsername());
-    if (user == null) throw NoSuchUserException.withName(ticket.getUsername());
+    User user = userService.findActiveUser(verified.getUsername());
+    if(user == null) user = userService.findActiveUserByEmail(verified.getUsername());
+    if (user == null) throw NoSuchUserException.withName(verified.getUsername());
 
     authorizationValidator.validateApplication(servletRequest, user, getApplicationName());
 
@@ -140,18 +170,17 @@ public class TicketResource extends ApplicationAwareResource {
     validateApplication(authHeader);
     tokenUtils.validateAccessToken(token, getApplicationName());
 
-    Ticket ticket = ticketService.getTicket(token);
-    ticket.addEvent(getApplicationName(), "subject");
-    ticketService.save(ticket);
+    TokenCache.VerifiedToken verified = ticketService.verifyToken(token);
+    ticketService.addEvent(verified.getTicketId(), getApplicationName(), "subject");
 
-    User user = userService.findActiveUser(ticket.getUsername());
-    if(user == null) user = userService.findActiveUserByEmail(ticket.getUsername());
+    User user = userService.findActiveUser(verified.getUsername());
+    if(user == null) user = userService.findActiveUserByEmail(verified.getUsername());
     AuthDtos.SubjectDto subject;
 
     if(user != null) {
       subject = dtos.asDto(user, true);
     } else {
-      subject = AuthDtos.SubjectDto.newBuilder().setUsername(ticket.getUsername()).build();
+      subject = AuthDtos.SubjectDto.newBuilder().setUsername(verified.getUsername()).build();
     }
 
     return subject;
@@ -164,16 +193,16 @@ public class TicketResource extends ApplicationAwareResource {
     validateApplication(authHeader);
     tokenUtils.validateAccessToken(token, getApplicationName());
 
-    Ticket ticket = ticketService.getTicket(token);
-    ticket.addEvent(getApplicationName(), "validate");
-    ticketService.save(ticket);
+    TokenCache.VerifiedToken verified = ticketService.verifyToken(token);
+    ticketService.addEvent(verified.getTicketId(), getApplicationName(), "validate");
 
-    String username = ticket.getUsername();
+    String username = verified.getUsername();
     User user = userService.findActiveUser(username);
     if(user == null) user = userService.findActiveUserByEmail(username);
     authorizationValidator.validateApplication(servletRequest, user, getApplicationName());
 
-    return Response.ok().header(HttpHeaders.SET_COOKIE, getCookie(ticket)).entity(ticket.getUsername()).build();
+    // the renewed cookie is made from the ticket fields kept with the verified token
+    return Response.ok().header(HttpHeaders.SET_COOKIE, getCookie(verified.getTicket())).entity(username).build();
   }
 
   @DELETE
@@ -11,6 +11,7 @@
 package org.obiba.agate.web.rest.ticket;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
@@ -22,9 +23,11 @@ import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.NewCookie;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
@@ -34,7 +37,6 @@ import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.authz.annotation.RequiresRoles;
 import org.apache.shiro.subject.Subject;
-import org.joda.time.DateTime;
 import org.obiba.agate.domain.Configuration;
 import org.obiba.agate.domain.Ticket;
 import org.obiba.agate.domain.User;
@@ -42,6 +44,8 @@ import org.obiba.agate.service.TicketService;
 import org.obiba.agate.service.TokenUtils;
 import org.obiba.agate.service.UserService;
 import org.obiba.agate.web.model.Agate;
+import org.obiba.agate.web.rest.JsonStreamingOutput;
+import org.obiba.agate.web.rest.PageLimits;
 import org.obiba.agate.web.rest.application.ApplicationAwareResource;
 import org.obiba.agate.web.rest.config.JerseyConfiguration;
 import org.obiba.shiro.realm.ObibaRealm;
@@ -76,7 +80,11 @@ public class TicketsResource extends ApplicationAwareResource {
 
   @GET
   @RequiresRoles("agate-administrator")
-  public List<Agate.TicketDto> get() {
+  public List<Agate.TicketDto> get(@QueryParam("after") String after, @QueryParam("limit") Integer limit) {
+    if(limit != null) {
+      return ticketService.findAll(after, PageLimits.check(limit)).stream().map(dtos::asDto).collect(Collectors.toList());
+    }
+
     ImmutableList.Builder<Agate.TicketDto> builder = ImmutableList.builder();
     for(Ticket ticket : ticketService.findAll()) {
       builder.add(dtos.asDto(ticket));
@@ -84,6 +92,14 @@ public class TicketsResource extends ApplicationAwareResource {
     return builder.build();
   }
 
+  @GET
+  @Path("/_stream")
+  @RequiresRoles("agate-administrator")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response stream() {
+    return Response.ok(new JsonStreamingOutput<>(ticketService.streamAll().map(dtos::asDto))).build();
+  }
+
   @POST
   public Response login(@Context HttpServletRequest servletRequest,
     @QueryParam("rememberMe") @DefaultValue("false") boolean rememberMe,
@@ -113,8 +129,7 @@ public class TicketsResource extends ApplicationAwareResource {
       NewCookie cookie = new NewCookie(TICKET_COOKIE_NAME, token, "/", configuration.getDomain(), null,
         timeout * 3600, configuration.hasDomain());
 
-      user.setLastLogin(DateTime.now());
-      userService.save(user);
+      userService.updateUserLastLogin(user.getName());
 
       log.info("Successful login for user '{}' from application '{}' with token: {}", username, getApplicationName(),
         token);
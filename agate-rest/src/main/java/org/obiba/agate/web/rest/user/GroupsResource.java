@@ -11,13 +11,20 @@
 package org.obiba.agate.web.rest.user;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
@@ -26,11 +33,14 @@ import org.obiba.agate.domain.Group;
 import org.obiba.agate.service.UserService;
 import org.obiba.agate.web.model.Agate;
 import org.obiba.agate.web.model.Dtos;
+import org.obiba.agate.web.rest.JsonStreamingOutput;
+import org.obiba.agate.web.rest.PageLimits;
 import org.obiba.agate.web.rest.config.JerseyConfiguration;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 
 @Component
 @RequiresRoles("agate-administrator")
@@ -58,7 +68,11 @@ public class GroupsResource {
   }
 
   @GET
-  public List<Agate.GroupDto> get() {
+  public List<Agate.GroupDto> get(@QueryParam("after") String after, @QueryParam("limit") Integer limit) {
+    if(limit != null) {
+      return userService.findGroups(after, PageLimits.check(limit)).stream().map(dtos::asDto).collect(Collectors.toList());
+    }
+
     ImmutableList.Builder<Agate.GroupDto> builder = ImmutableList.builder();
 
     for(Group group : userService.findGroups()) {
@@ -68,4 +82,38 @@ public class GroupsResource {
     return builder.build();
   }
 
+  @GET
+  @Path("/_stream")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response stream() {
+    return Response.ok(new JsonStreamingOutput<>(userService.streamGroups().map(dtos::asDto))).build();
+  }
+
+  @DELETE
+  public Response delete(@QueryParam("name") List<String> names) {
+    if(names == null || names.isEmpty()) throw new BadRequestException("Missing group names.");
+
+    userService.deleteGroups(names);
+
+    return Response.noContent().build();
+  }
+
+  @PUT
+  @Path("/_rename")
+  public Response rename(@FormParam("name") List<String> names, @FormParam("newName") List<String> newNames) {
+    if(names == null || names.isEmpty()) throw new BadRequestException("Missing group names.");
+    if(newNames == null || names.size() != newNames.size()) {
+      throw new BadRequestException("Each group name must have a new name.");
+    }
+
+    Map<String, String> renames = Maps.newLinkedHashMap();
+    for(int i = 0; i < names.size(); i++) {
+      if(Strings.isNullOrEmpty(newNames.get(i))) throw new BadRequestException("Group name cannot be empty.");
+      renames.put(names.get(i), newNames.get(i));
+    }
+    userService.renameGroups(renames);
+
+    return Response.noContent().build();
+  }
+
 }
@@ -11,13 +11,16 @@
 package org.obiba.agate.web.rest.user;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
@@ -28,6 +31,8 @@ import org.obiba.agate.domain.UserStatus;
 import org.obiba.agate.service.UserService;
 import org.obiba.agate.web.model.Agate;
 import org.obiba.agate.web.model.Dtos;
+import org.obiba.agate.web.rest.JsonStreamingOutput;
+import org.obiba.agate.web.rest.PageLimits;
 import org.obiba.agate.web.rest.config.JerseyConfiguration;
 import org.springframework.stereotype.Component;
 
@@ -47,9 +52,15 @@ public class UsersResource {
   private Dtos dtos;
 
   @GET
-  public List<Agate.UserDto> get(@QueryParam("status") String status) {
+  public List<Agate.UserDto> get(@QueryParam("status") String status, @QueryParam("after") String after,
+    @QueryParam("limit") Integer limit) {
+    if(limit != null) {
+      return userService.findUsers(toStatus(status), after, PageLimits.check(limit)).stream().map(dtos::asDto)
+        .collect(Collectors.toList());
+    }
+
     ImmutableList.Builder<Agate.UserDto> builder = ImmutableList.builder();
-    List<User> users = status != null ? userService.findUsers(UserStatus.valueOf(status.toUpperCase())) : userService.findUsers();
+    List<User> users = status != null ? userService.findUsers(toStatus(status)) : userService.findUsers();
 
     for(User user : users) {
       builder.add(dtos.asDto(user));
@@ -58,6 +69,13 @@ public class UsersResource {
     return builder.build();
   }
 
+  @GET
+  @Path("/_stream")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response stream(@QueryParam("status") String status) {
+    return Response.ok(new JsonStreamingOutput<>(userService.streamUsers(toStatus(status)).map(dtos::asDto))).build();
+  }
+
   @POST
   public Response create(Agate.UserCreateFormDto userCreateFormDto) {
     Agate.UserDto userDto = userCreateFormDto.getUser();
@@ -80,4 +98,8 @@ public class UsersResource {
     return Response
       .created(UriBuilder.fromPath(JerseyConfiguration.WS_ROOT).path(UserResource.class).build(user.getId())).build();
   }
+
+  private UserStatus toStatus(String status) {
+    return status == null ? null : UserStatus.valueOf(status.toUpperCase());
+  }
 }
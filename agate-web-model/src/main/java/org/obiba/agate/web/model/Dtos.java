@@ -8,6 +8,7 @@ import org.obiba.agate.domain.Authorization;
 import org.obiba.agate.domain.Configuration;
 import org.obiba.agate.domain.Group;
 import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.domain.TicketEvent;
 import org.obiba.agate.domain.User;
 import org.obiba.agate.service.TicketService;
 import org.obiba.web.model.AuthDtos;
@@ -40,6 +41,11 @@ public class Dtos {
     return ticketDtos.asDto(ticket);
   }
 
+  @NotNull
+  public Agate.TicketDto.Event asDto(@NotNull TicketEvent event) {
+    return ticketDtos.asDto(event);
+  }
+
   @NotNull
   public Agate.AuthorizationDto asDto(@NotNull Authorization authorization) {
     return ticketDtos.asDto(authorization);
@@ -4,7 +4,9 @@ import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 
 import org.obiba.agate.domain.Authorization;
+import org.joda.time.DateTime;
 import org.obiba.agate.domain.Ticket;
+import org.obiba.agate.domain.TicketEvent;
 import org.obiba.agate.service.AuthorizationService;
 import org.obiba.agate.service.TicketService;
 import org.springframework.stereotype.Component;
@@ -29,13 +31,9 @@ class TicketDtos {
       .setRemembered(ticket.isRemembered()) //
       .setTimestamps(TimestampsDtos.asDto(ticket));
 
+    // only the most recent events are embedded in the ticket
     for(Ticket.Event event : ticket.getEvents()) {
-      Agate.TicketDto.Event.Builder eBuilder = Agate.TicketDto.Event.newBuilder() //
-
-        .setAction(event.getAction()) //
-        .setTime(event.getTime().toString());
-      if(!Strings.isNullOrEmpty(event.getApplication())) eBuilder.setApplication(event.getApplication());
-      builder.addEvents(eBuilder);
+      builder.addEvents(asDto(event.getApplication(), event.getAction(), event.getTime()));
     }
 
     builder.setExpires(ticketService.getExpirationDate(ticket).toString());
@@ -48,6 +46,11 @@ class TicketDtos {
     return builder.build();
   }
 
+  @NotNull
+  Agate.TicketDto.Event asDto(@NotNull TicketEvent event) {
+    return asDto(event.getApplication(), event.getAction(), event.getTime());
+  }
+
   @NotNull
   Agate.AuthorizationDto asDto(@NotNull Authorization authorization) {
     Agate.AuthorizationDto.Builder builder = Agate.AuthorizationDto.newBuilder();
@@ -63,4 +66,12 @@ class TicketDtos {
     return builder.build();
   }
 
+  private Agate.TicketDto.Event asDto(String application, String action, DateTime time) {
+    Agate.TicketDto.Event.Builder builder = Agate.TicketDto.Event.newBuilder() //
+      .setAction(action) //
+      .setTime(time.toString());
+    if(!Strings.isNullOrEmpty(application)) builder.setApplication(application);
+    return builder.build();
+  }
+
 }
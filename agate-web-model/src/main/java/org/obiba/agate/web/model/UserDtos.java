@@ -10,8 +10,6 @@
 
 package org.obiba.agate.web.model;
 
-import java.util.Optional;
-
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 
@@ -49,12 +47,8 @@ class UserDtos {
     if(user.hasGroups()) {
       builder.addAllGroups(user.getGroups());
 
-      user.getGroups().forEach(g -> Optional.ofNullable(userService.findGroup(g)).flatMap(r -> {
-          r.getApplications().forEach(
-            a -> builder.addGroupApplications(Agate.GroupApplicationDto.newBuilder().setGroup(g).setApplication(a))
-              .build());
-          return Optional.of(r);
-        }));
+      user.getGroups().forEach(g -> userService.getGroupApplications(g).forEach(
+        a -> builder.addGroupApplications(Agate.GroupApplicationDto.newBuilder().setGroup(g).setApplication(a))));
     }
 
     if(user.hasApplications()) builder.addAllApplications(user.getApplications());
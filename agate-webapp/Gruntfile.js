@@ -386,9 +386,32 @@ module.exports = function (grunt) {
     'replace',
     'uglify',
     'rev',
-    'usemin'
+    'usemin',
+    'precompress'
   ]);
 
+  // writes the .gz (node >= 0.11.12) and .br (when the node version supports brotli) variants of the text assets
+  // of dist, served according to the Accept-Encoding of the request by StaticResourcesProductionFilter
+  grunt.registerTask('precompress', function () {
+    var zlib = require('zlib');
+    if (!zlib.gzipSync && !zlib.brotliCompressSync) {
+      grunt.log.writeln('Synchronous compression not supported by node ' + process.version + ', skipping');
+      return;
+    }
+    var files = grunt.file.expand({filter: 'isFile'},
+      grunt.config.get('yeoman.dist') + '/**/*.{html,js,css,json,svg,txt,eot,ttf}');
+    files.forEach(function (file) {
+      var content = grunt.file.read(file, {encoding: null});
+      if (zlib.gzipSync) {
+        grunt.file.write(file + '.gz', zlib.gzipSync(content, {level: 9}));
+      }
+      if (zlib.brotliCompressSync) {
+        grunt.file.write(file + '.br', zlib.brotliCompressSync(content));
+      }
+    });
+    grunt.log.ok(files.length + ' files precompressed' + (zlib.brotliCompressSync ? '' : ' (gzip only)'));
+  });
+
   grunt.registerTask('default', [
     'test',
     'build'
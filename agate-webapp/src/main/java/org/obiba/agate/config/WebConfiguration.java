@@ -21,10 +21,10 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
-import org.eclipse.jetty.servlets.GzipFilter;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.obiba.agate.web.filter.CachingHttpHeadersFilter;
 import org.obiba.agate.web.filter.StaticResourcesProductionFilter;
+import org.obiba.agate.web.filter.gzip.GZipServletFilter;
 import org.obiba.shiro.web.filter.AuthenticationFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -176,12 +176,18 @@ public class WebConfiguration implements ServletContextInitializer, JettyServerC
   private void initGzipFilter(ServletContext servletContext, EnumSet<DispatcherType> disps) {
     log.debug("Registering GZip Filter");
 
-    FilterRegistration.Dynamic compressingFilter = servletContext.addFilter("gzipFilter", new GzipFilter());
+    FilterRegistration.Dynamic compressingFilter = servletContext.addFilter("gzipFilter", new GZipServletFilter());
 
     if (compressingFilter == null) {
       compressingFilter = (FilterRegistration.Dynamic)servletContext.getFilterRegistration("gzipFilter");
     }
 
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(env, "gzip.");
+    for(String param : new String[] { "mode", "minGzipSize", "mimeTypes" }) {
+      String value = propertyResolver.getProperty(param);
+      if(value != null) compressingFilter.setInitParameter(param, value);
+    }
+
     compressingFilter.addMappingForUrlPatterns(disps, true, "*.css");
     compressingFilter.addMappingForUrlPatterns(disps, true, "*.json");
     compressingFilter.addMappingForUrlPatterns(disps, true, "*.html");
@@ -200,6 +206,12 @@ public class WebConfiguration implements ServletContextInitializer, JettyServerC
     FilterRegistration.Dynamic resourcesFilter = servletContext
         .addFilter("staticResourcesProductionFilter", new StaticResourcesProductionFilter());
 
+    RelaxedPropertyResolver propertyResolver = new RelaxedPropertyResolver(env, "static.cache.");
+    for(String param : new String[] { "maxSize", "watch" }) {
+      String value = propertyResolver.getProperty(param);
+      if(value != null) resourcesFilter.setInitParameter(param, value);
+    }
+
     resourcesFilter.addMappingForUrlPatterns(disps, true, "/favicon.ico");
     resourcesFilter.addMappingForUrlPatterns(disps, true, "/robots.txt");
     resourcesFilter.addMappingForUrlPatterns(disps, true, "/index.html");
@@ -19,9 +19,6 @@ public class CachingHttpHeadersFilter implements Filter {
   // Cache period is 1 month (in ms)
   private final static long CACHE_PERIOD = 2678400000L;
 
-  // We consider the last modified date is the start up time of the server
-  private final static long LAST_MODIFIED = System.currentTimeMillis();
-
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
     // Nothing to initialize
@@ -43,8 +40,7 @@ public class CachingHttpHeadersFilter implements Filter {
     // Setting Expires header, for proxy caching
     httpResponse.setDateHeader("Expires", CACHE_PERIOD + System.currentTimeMillis());
 
-    // Setting the Last-Modified header, for browser caching
-    httpResponse.setDateHeader("Last-Modified", LAST_MODIFIED);
+    // no Last-Modified header, browsers revalidate with the ETag of the content (see StaticResourcesProductionFilter)
 
     chain.doFilter(request, response);
   }
@@ -0,0 +1,316 @@
+package org.obiba.agate.web.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+import javax.servlet.ServletContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * In memory cache of the static resources: the resources and their pre-compressed variants are memory-mapped (or read
+ * when they are not files) at startup, with their content type and content hash. The cache stops growing at its
+ * maximum size. When watching is enabled, the cache is cleared whenever a file changes, and the files are read in
+ * memory instead of being mapped, as a rebuild may rewrite them in place.
+ */
+class StaticResourcesCache {
+
+  private static final Logger log = LoggerFactory.getLogger(StaticResourcesCache.class);
+
+  private static final int HASH_CHUNK_SIZE = 8192;
+
+  private final ServletContext servletContext;
+
+  private final String root;
+
+  private final long maxSize;
+
+  private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+  private final AtomicLong size = new AtomicLong();
+
+  private WatchService watchService;
+
+  private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+  private volatile boolean watching;
+
+  StaticResourcesCache(ServletContext servletContext, String root, long maxSize) {
+    this.servletContext = servletContext;
+    this.root = root;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Load all the resources, until the cache is full.
+   */
+  void preload() {
+    preload(root + "/");
+    log.info("{} static resources cached ({} bytes)", resources.size(), size.get());
+  }
+
+  /**
+   * Clear the cache whenever a file of the resources directory changes. The parent directory is watched as well, so
+   * that the resources directory is watched again when a build deletes and recreates it. To be called before
+   * {@link #preload()}, so that no watched file is mapped.
+   */
+  void watch() {
+    String realRoot = servletContext.getRealPath(root);
+    if(realRoot == null) return;
+    Path rootDir = new File(realRoot).toPath().toAbsolutePath();
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      if(rootDir.getParent() != null) register(rootDir.getParent());
+      registerAll(rootDir);
+    } catch(IOException e) {
+      log.warn("Unable to watch the static resources: {}", e.getMessage());
+      return;
+    }
+    watching = true;
+
+    Thread watcher = new Thread(() -> {
+      try {
+        while(true) {
+          WatchKey key = watchService.take();
+          Path dir = watchedDirs.get(key);
+          boolean changed = false;
+          for(WatchEvent<?> event : key.pollEvents()) {
+            if(dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              changed = true;
+              continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if(!child.startsWith(rootDir)) continue;
+            changed = true;
+            if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) registerAll(child);
+          }
+          if(!key.reset()) watchedDirs.remove(key);
+          if(changed) {
+            log.debug("Static resources changed, clearing the cache");
+            clear();
+          }
+        }
+      } catch(InterruptedException | ClosedWatchServiceException e) {
+        // stopped
+      }
+    }, "agate-static-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  void close() {
+    if(watchService == null) return;
+    try {
+      watchService.close();
+    } catch(IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Get a static resource from the cache, loading it if the cache is not full. Missing resources are not cached, so
+   * that requests for arbitrary paths do not make the cache grow.
+   *
+   * @param path
+   * @return null if there is no such resource or if the cache is full
+   */
+  @Nullable
+  Resource get(String path) {
+    Resource resource = resources.get(path);
+    if(resource != null) return resource;
+    if(path.contains("..") || size.get() >= maxSize) return null;
+    try {
+      return load(path);
+    } catch(IOException e) {
+      log.warn("Unable to load static resource '{}': {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  //
+  // Private methods
+  //
+
+  private void clear() {
+    resources.clear();
+    size.set(0);
+  }
+
+  /**
+   * Watch a directory and its sub-directories, those which could not be registered being skipped.
+   *
+   * @param dir
+   */
+  private void registerAll(Path dir) {
+    if(!Files.isDirectory(dir)) return;
+    try(Stream<Path> paths = Files.walk(dir)) {
+      paths.filter(Files::isDirectory).forEach(this::register);
+    } catch(IOException | UncheckedIOException e) {
+      log.warn("Unable to watch the static resources of {}: {}", dir, e.getMessage());
+    }
+  }
+
+  private void register(Path dir) {
+    try {
+      watchedDirs.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+    } catch(IOException e) {
+      log.warn("Unable to watch {}: {}", dir, e.getMessage());
+    }
+  }
+
+  private void preload(String dir) {
+    Set<String> paths = servletContext.getResourcePaths(dir);
+    if(paths == null) return;
+    for(String path : paths) {
+      if(size.get() >= maxSize) return;
+      if(path.endsWith("/")) preload(path);
+      else if(!path.endsWith(".gz") && !path.endsWith(".br")) get(path);
+    }
+  }
+
+  private Resource load(String path) throws IOException {
+    ByteBuffer identity = read(path);
+    if(identity == null) return null;
+
+    ImmutableMap.Builder<String, ByteBuffer> variants = ImmutableMap.builder();
+    variants.put("identity", identity);
+    ByteBuffer brotli = read(path + ".br");
+    if(brotli != null) variants.put("br", brotli);
+    ByteBuffer gzip = read(path + ".gz");
+    if(gzip != null) variants.put("gzip", gzip);
+
+    Resource resource = new Resource(servletContext.getMimeType(path), hash(identity), variants.build());
+    if(size.addAndGet(resource.size()) > maxSize) {
+      size.addAndGet(-resource.size());
+      return null;
+    }
+    Resource previous = resources.putIfAbsent(path, resource);
+    if(previous != null) {
+      size.addAndGet(-resource.size());
+      return previous;
+    }
+    return resource;
+  }
+
+  /**
+   * Map the file in memory or read the resource. Watched files are read, as a mapped file that is truncated while
+   * being served would make the JVM fail.
+   *
+   * @param path
+   * @return null if there is no such resource or if it is a directory
+   * @throws IOException
+   */
+  @Nullable
+  private ByteBuffer read(String path) throws IOException {
+    String realPath = servletContext.getRealPath(path);
+    if(realPath != null) {
+      File file = new File(realPath);
+      if(!file.isFile()) return null;
+      if(watching) return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).asReadOnlyBuffer();
+      try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    }
+
+    if(!exists(path) || exists(path + "/")) return null;
+    try(InputStream input = servletContext.getResourceAsStream(path)) {
+      return input == null ? null : ByteBuffer.wrap(ByteStreams.toByteArray(input)).asReadOnlyBuffer();
+    }
+  }
+
+  private boolean exists(String path) {
+    try {
+      return servletContext.getResource(path) != null;
+    } catch(MalformedURLException e) {
+      return false;
+    }
+  }
+
+  private String hash(ByteBuffer content) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    ByteBuffer buffer = content.duplicate();
+    byte[] chunk = new byte[HASH_CHUNK_SIZE];
+    while(buffer.hasRemaining()) {
+      int length = Math.min(chunk.length, buffer.remaining());
+      buffer.get(chunk, 0, length);
+      hasher.putBytes(chunk, 0, length);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * A static resource and its pre-compressed variants, by encoding.
+   */
+  static class Resource {
+
+    private final String contentType;
+
+    private final String hash;
+
+    private final Map<String, ByteBuffer> variants;
+
+    private Resource(String contentType, String hash, Map<String, ByteBuffer> variants) {
+      this.contentType = contentType;
+      this.hash = hash;
+      this.variants = variants;
+    }
+
+    String getContentType() {
+      return contentType;
+    }
+
+    String getHash() {
+      return hash;
+    }
+
+    boolean hasVariant(String encoding) {
+      return variants.containsKey(encoding);
+    }
+
+    boolean hasCompressedVariants() {
+      return variants.size() > 1;
+    }
+
+    /**
+     * Get the content of a variant, to be read without side effect on the cached buffer.
+     *
+     * @param encoding
+     * @return
+     */
+    ByteBuffer getContent(String encoding) {
+      return variants.get(encoding).duplicate();
+    }
+
+    private long size() {
+      return variants.values().stream().mapToLong(ByteBuffer::capacity).sum();
+    }
+  }
+
+}
@@ -1,35 +1,56 @@
 package org.obiba.agate.web.filter;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
+import org.eclipse.jetty.server.HttpOutput;
 
 /**
  * This filter is used in production, to serve static resources generated by "grunt build".
  * <p/>
  * <p>
  * It is configured to serve resources from the "dist" directory, which is the Grunt
- * destination directory.
+ * destination directory. When the client accepts it, the brotli (.br) or gzip (.gz) variant of the resource
+ * compressed at build time is served. Resources are tagged with a hash of their content, so that browsers can
+ * revalidate them with a conditional request, even after a server restart.
+ * </p>
+ * <p>
+ * Resources are held in memory (see {@link StaticResourcesCache}), up to the "maxSize" bytes init parameter. The
+ * resources that do not fit are forwarded to the default servlet.
  * </p>
  */
 public class StaticResourcesProductionFilter implements Filter {
 
+  private static final String ROOT = "/dist";
+
+  private static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+  private StaticResourcesCache cache;
+
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
-    // Nothing to initialize
+    String maxSize = filterConfig.getInitParameter("maxSize");
+    cache = new StaticResourcesCache(filterConfig.getServletContext(), ROOT,
+      maxSize == null ? DEFAULT_MAX_SIZE : Long.parseLong(maxSize));
+    if(Boolean.parseBoolean(filterConfig.getInitParameter("watch"))) cache.watch();
+    cache.preload();
   }
 
   @Override
   public void destroy() {
-    // Nothing to destroy
+    if(cache != null) cache.close();
   }
 
   @Override
@@ -42,7 +63,73 @@ public class StaticResourcesProductionFilter implements Filter {
     if(StringUtils.equals("/", requestURI)) {
       requestURI = "/index.html";
     }
-    String newURI = "/dist" + requestURI;
-    request.getRequestDispatcher(newURI).forward(request, response);
+    String newURI = ROOT + requestURI;
+
+    StaticResourcesCache.Resource resource = isGetOrHead(httpRequest) ? cache.get(newURI) : null;
+    if(resource == null) {
+      request.getRequestDispatcher(newURI).forward(request, response);
+    } else {
+      serve(resource, httpRequest, (HttpServletResponse) response);
+    }
+  }
+
+  //
+  // Private methods
+  //
+
+  private boolean isGetOrHead(HttpServletRequest request) {
+    return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+  }
+
+  private void serve(StaticResourcesCache.Resource resource, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    String encoding = selectEncoding(resource, request.getHeader("Accept-Encoding"));
+    String etag = "\"" + resource.getHash() + (encoding == null ? "" : "-" + encoding) + "\"";
+    response.setHeader("ETag", etag);
+    if(resource.hasCompressedVariants()) response.setHeader("Vary", "Accept-Encoding");
+
+    if(isNotModified(resource, request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    ByteBuffer content = resource.getContent(encoding == null ? "identity" : encoding);
+    if(resource.getContentType() != null) response.setContentType(resource.getContentType());
+    if(encoding != null) response.setHeader("Content-Encoding", encoding);
+    response.setContentLength(content.remaining());
+    if("HEAD".equals(request.getMethod())) return;
+
+    ServletOutputStream output = response.getOutputStream();
+    if(output instanceof HttpOutput) {
+      // Jetty writes the buffer without copying it
+      ((HttpOutput) output).sendContent(content);
+    } else {
+      Channels.newChannel(output).write(content);
+    }
+  }
+
+  private String selectEncoding(StaticResourcesCache.Resource resource, String acceptEncoding) {
+    if(acceptEncoding == null) return null;
+    if(resource.hasVariant("br") && acceptEncoding.contains("br")) return "br";
+    if(resource.hasVariant("gzip") && acceptEncoding.contains("gzip")) return "gzip";
+    return null;
+  }
+
+  /**
+   * Whatever the encoding of the cached variant, the content is the same.
+   *
+   * @param resource
+   * @param ifNoneMatch
+   * @return
+   */
+  private boolean isNotModified(StaticResourcesCache.Resource resource, String ifNoneMatch) {
+    if(ifNoneMatch == null) return false;
+    if("*".equals(ifNoneMatch.trim())) return true;
+    String hash = resource.getHash();
+    for(String tag : ifNoneMatch.split(",")) {
+      String value = StringUtils.removeStart(tag.trim(), "W/");
+      if(value.startsWith("\"" + hash + "\"") || value.startsWith("\"" + hash + "-")) return true;
+    }
+    return false;
   }
 }
@@ -2,8 +2,11 @@ package org.obiba.agate.web.filter.gzip;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Set;
 import java.util.zip.GZIPOutputStream;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -16,13 +19,42 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
+
+/**
+ * Compresses the responses of the clients accepting gzip. In the "streaming" mode (default), the body is compressed
+ * while it is written, see {@link GZipStreamingResponseWrapper}; in the "buffered" mode, the whole body is compressed
+ * in memory before being written with its content length.
+ * <p/>
+ * Init parameters: "mode", "minGzipSize" (streaming mode only, in bytes) and "mimeTypes" (streaming mode only, comma
+ * separated list of the compressible content types).
+ */
 public class GZipServletFilter implements Filter {
 
   private static final Logger log = LoggerFactory.getLogger(GZipServletFilter.class);
 
+  private static final int DEFAULT_MIN_GZIP_SIZE = 1024;
+
+  private static final String DEFAULT_MIME_TYPES = "text/html,text/plain,text/css,text/xml,application/javascript," +
+    "application/json,application/xml";
+
+  private boolean streaming = true;
+
+  private int minGzipSize = DEFAULT_MIN_GZIP_SIZE;
+
+  private Set<String> mimeTypes = Sets.newHashSet(Splitter.on(',').split(DEFAULT_MIME_TYPES));
+
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
-    // Nothing to initialize
+    String mode = filterConfig.getInitParameter("mode");
+    if(mode != null) streaming = !"buffered".equalsIgnoreCase(mode);
+    String minSize = filterConfig.getInitParameter("minGzipSize");
+    if(minSize != null) minGzipSize = Integer.parseInt(minSize);
+    String types = filterConfig.getInitParameter("mimeTypes");
+    if(types != null) {
+      mimeTypes = Sets.newHashSet(Splitter.on(',').trimResults().omitEmptyStrings().split(types.toLowerCase()));
+    }
   }
 
   @Override
@@ -43,6 +75,11 @@ public class GZipServletFilter implements Filter {
         log.trace("{} Written with gzip compression", httpRequest.getRequestURL());
       }
 
+      if(streaming) {
+        doFilterStreaming(httpRequest, httpResponse, chain);
+        return;
+      }
+
       // Create a gzip stream
       ByteArrayOutputStream compressed = new ByteArrayOutputStream();
       GZIPOutputStream gzout = new GZIPOutputStream(compressed);
@@ -98,6 +135,19 @@ public class GZipServletFilter implements Filter {
     }
   }
 
+  private void doFilterStreaming(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+    throws IOException, ServletException {
+    GZipStreamingResponseWrapper wrapper = new GZipStreamingResponseWrapper(response, minGzipSize, mimeTypes);
+    chain.doFilter(request, wrapper);
+
+    if(request.isAsyncStarted()) {
+      // the body will be complete once the async processing is
+      request.getAsyncContext().addListener(new FinishOnCompleteListener(wrapper));
+    } else {
+      wrapper.finish();
+    }
+  }
+
   /**
    * Checks if the request uri is an include. These cannot be gzipped.
    */
@@ -117,4 +167,31 @@ public class GZipServletFilter implements Filter {
     String acceptEncoding = httpRequest.getHeader("Accept-Encoding");
     return acceptEncoding != null && acceptEncoding.contains("gzip");
   }
+
+  private static class FinishOnCompleteListener implements AsyncListener {
+
+    private final GZipStreamingResponseWrapper wrapper;
+
+    private FinishOnCompleteListener(GZipStreamingResponseWrapper wrapper) {
+      this.wrapper = wrapper;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+      wrapper.finish();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+      event.getAsyncContext().addListener(this);
+    }
+  }
 }
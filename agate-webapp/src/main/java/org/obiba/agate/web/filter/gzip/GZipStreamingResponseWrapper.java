@@ -0,0 +1,243 @@
+package org.obiba.agate.web.filter.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response compressed on the fly: the first bytes are held until the minimum size is reached, then the body is
+ * written in gzip chunks to the servlet output stream. Bodies smaller than the minimum size, of a type which is not
+ * compressible or with an empty status are written as is.
+ */
+class GZipStreamingResponseWrapper extends HttpServletResponseWrapper {
+
+  private static final int GZIP_BUFFER_SIZE = 8192;
+
+  private final int minGzipSize;
+
+  private final Set<String> mimeTypes;
+
+  private final StreamingOutputStream outputStream = new StreamingOutputStream();
+
+  private PrintWriter printWriter;
+
+  private long contentLength = -1;
+
+  GZipStreamingResponseWrapper(HttpServletResponse response, int minGzipSize, Set<String> mimeTypes) {
+    super(response);
+    this.minGzipSize = minGzipSize;
+    this.mimeTypes = mimeTypes;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if(printWriter != null) {
+      throw new IllegalStateException("PrintWriter obtained already - cannot get OutputStream");
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if(printWriter == null) {
+      printWriter = new PrintWriter(new OutputStreamWriter(outputStream, getResponse().getCharacterEncoding()));
+    }
+    return printWriter;
+  }
+
+  @Override
+  public void setContentLength(int length) {
+    setContentLengthLong(length);
+  }
+
+  @Override
+  public void setContentLengthLong(long length) {
+    // only known to be right if the body is not compressed
+    contentLength = length;
+    if(outputStream.isIdentity()) super.setContentLengthLong(length);
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    if(printWriter != null) printWriter.flush();
+    outputStream.flush();
+    super.flushBuffer();
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    outputStream.reset();
+    contentLength = -1;
+  }
+
+  @Override
+  public void resetBuffer() {
+    super.resetBuffer();
+    outputStream.reset();
+  }
+
+  /**
+   * Write what is still held or compressed, to be called once the body is complete.
+   *
+   * @throws IOException
+   */
+  void finish() throws IOException {
+    if(printWriter != null) printWriter.flush();
+    outputStream.finish();
+  }
+
+  private boolean isCompressible() {
+    if(getStatus() < HttpServletResponse.SC_OK || getStatus() == HttpServletResponse.SC_NO_CONTENT ||
+      getStatus() == HttpServletResponse.SC_RESET_CONTENT || getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+      return false;
+    }
+    if(containsHeader("Content-Encoding")) return false;
+    if(contentLength >= 0 && contentLength < minGzipSize) return false;
+
+    String contentType = getContentType();
+    if(contentType == null) return false;
+    int separator = contentType.indexOf(';');
+    String mimeType = separator < 0 ? contentType : contentType.substring(0, separator);
+    return mimeTypes.contains(mimeType.trim().toLowerCase());
+  }
+
+  /**
+   * Holds the bytes until the compression decision is taken, then writes them through either the gzip stream or the
+   * servlet output stream.
+   */
+  private class StreamingOutputStream extends ServletOutputStream {
+
+    private ByteArrayOutputStream held = new ByteArrayOutputStream();
+
+    private OutputStream target;
+
+    private boolean identity;
+
+    private boolean finished;
+
+    boolean isIdentity() {
+      return identity;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      checkNotFinished();
+      if(target == null) {
+        held.write(b);
+        if(held.size() >= minGzipSize) decide();
+      } else {
+        target.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      checkNotFinished();
+      if(target == null) {
+        held.write(b, off, len);
+        if(held.size() >= minGzipSize) decide();
+      } else {
+        target.write(b, off, len);
+      }
+    }
+
+    /**
+     * The body is being streamed: send what was written so far, compressed if possible.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+      if(finished) return;
+      if(target == null) {
+        if(held.size() == 0) return;
+        decide();
+      }
+      target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+    }
+
+    void finish() throws IOException {
+      if(finished) return;
+      finished = true;
+      if(target == null) {
+        // tiny body, not worth compressing
+        identity = true;
+        if(!isCommitted()) getResponse().setContentLength(held.size());
+        target = getResponse().getOutputStream();
+        held.writeTo(target);
+        held = null;
+      } else if(!identity) {
+        ((GZIPOutputStream) target).finish();
+      }
+    }
+
+    void reset() {
+      if(target == null && held != null) held.reset();
+    }
+
+    /**
+     * Once finished, the identity body can still be appended (e.g. by an error page) but the gzip body is complete.
+     *
+     * @throws IOException
+     */
+    private void checkNotFinished() throws IOException {
+      if(finished && !identity) throw new IOException("Compressed response body already finished");
+    }
+
+    private void decide() throws IOException {
+      HttpServletResponse response = (HttpServletResponse) getResponse();
+      if(isCompressible() && setGzipHeaders(response)) {
+        target = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE, true);
+      } else {
+        identity = true;
+        if(contentLength >= 0) getResponse().setContentLengthLong(contentLength);
+        target = getResponse().getOutputStream();
+      }
+      held.writeTo(target);
+      held = null;
+    }
+
+    private boolean setGzipHeaders(HttpServletResponse response) {
+      try {
+        GZipResponseUtil.addGzipHeader(response);
+      } catch(GzipResponseHeadersNotModifiableException e) {
+        return false;
+      }
+      response.addHeader("Vary", "Accept-Encoding");
+      return true;
+    }
+
+    @Override
+    public boolean isReady() {
+      try {
+        return getResponse().getOutputStream().isReady();
+      } catch(IOException e) {
+        return false;
+      }
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      try {
+        getResponse().getOutputStream().setWriteListener(writeListener);
+      } catch(IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package org.obiba.agate.web.filter.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.google.common.io.ByteStreams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GZipServletFilterTest {
+
+  private GZipServletFilter filter;
+
+  private MockHttpServletRequest request;
+
+  private MockHttpServletResponse response;
+
+  @Before
+  public void setUp() {
+    filter = new GZipServletFilter();
+    request = new MockHttpServletRequest("GET", "/ws/users");
+    request.addHeader("Accept-Encoding", "gzip, deflate");
+    response = new MockHttpServletResponse();
+  }
+
+  @Test
+  public void test_large_body_is_compressed() throws Exception {
+    byte[] body = body(4096);
+
+    filter.doFilter(request, response, writing("application/json", body));
+
+    assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(body);
+  }
+
+  @Test
+  public void test_body_below_min_size_is_not_compressed() throws Exception {
+    byte[] body = body(100);
+
+    filter.doFilter(request, response, writing("application/json", body));
+
+    assertThat(response.containsHeader("Content-Encoding")).isFalse();
+    assertThat(response.getContentLength()).isEqualTo(body.length);
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+  }
+
+  @Test
+  public void test_disallowed_type_is_not_compressed() throws Exception {
+    byte[] body = body(4096);
+
+    filter.doFilter(request, response, writing("image/png", body));
+
+    assertThat(response.containsHeader("Content-Encoding")).isFalse();
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+  }
+
+  @Test
+  public void test_already_encoded_body_is_not_compressed() throws Exception {
+    byte[] body = body(4096);
+
+    filter.doFilter(request, response, (req, res) -> {
+      ((HttpServletResponse) res).setHeader("Content-Encoding", "br");
+      writing("application/json", body).doFilter(req, res);
+    });
+
+    assertThat(response.getHeader("Content-Encoding")).isEqualTo("br");
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+  }
+
+  @Test
+  public void test_async_body_is_finished_on_complete() throws Exception {
+    byte[] body = body(4096);
+    AtomicReference<AsyncContext> asyncContext = new AtomicReference<>();
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, (req, res) -> {
+      asyncContext.set(req.startAsync());
+      writing("application/json", body).doFilter(req, res);
+    });
+    int pending = response.getContentAsByteArray().length;
+    asyncContext.get().complete();
+
+    assertThat(response.getContentAsByteArray().length).isGreaterThan(pending);
+    assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(body);
+  }
+
+  @Test
+  public void test_identity_body_can_be_appended_once_finished() throws Exception {
+    AtomicReference<ServletResponse> wrapper = new AtomicReference<>();
+
+    filter.doFilter(request, response, (req, res) -> {
+      wrapper.set(res);
+      writing("application/json", "{}".getBytes()).doFilter(req, res);
+    });
+    wrapper.get().getOutputStream().write("!".getBytes());
+
+    assertThat(response.getContentAsString()).isEqualTo("{}!");
+  }
+
+  @Test(expected = IOException.class)
+  public void test_compressed_body_cannot_be_appended_once_finished() throws Exception {
+    AtomicReference<ServletResponse> wrapper = new AtomicReference<>();
+
+    filter.doFilter(request, response, (req, res) -> {
+      wrapper.set(res);
+      writing("application/json", body(4096)).doFilter(req, res);
+    });
+    wrapper.get().getOutputStream().write("!".getBytes());
+  }
+
+  //
+  // Private methods
+  //
+
+  private static FilterChain writing(String contentType, byte[] body) {
+    return (req, res) -> {
+      res.setContentType(contentType);
+      res.getOutputStream().write(body);
+    };
+  }
+
+  private static byte[] body(int size) {
+    byte[] body = new byte[size];
+    Arrays.fill(body, (byte) 'a');
+    return body;
+  }
+
+  private static byte[] gunzip(byte[] compressed) throws IOException {
+    return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+  }
+
+}